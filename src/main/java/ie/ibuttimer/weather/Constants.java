@@ -35,6 +35,15 @@ public class Constants {
             appendPattern("yyyyMMddHH").toFormatter();
 
     public static final String REDUCER_STATS = "reducer.stats";
+    public static final String INPUT_ENCODING = "input.storage_encoding";      // input table encoding, set by driver
+    public static final String OUTPUT_ENCODING = "output.storage_encoding";    // output table encoding, set by driver
+    public static final String OUTPUT_SALT_BUCKETS = "output.salt_buckets";     // output table salt, set by driver
+    public static final String INPUT_LAYOUT = "input.storage_layout";          // input table layout, set by driver
+    public static final String INPUT_RANGE_START = "input.range_start";        // input reading time range start
+    public static final String INPUT_RANGE_STOP = "input.range_stop";          // input reading time range stop
+    public static final String OUTPUT_LAYOUT = "output.storage_layout";        // output table layout, set by driver
+    public static final String COLUMN_REGISTRY = "column.registry";            // column registry table, set by driver
+    public static final String COLUMN_REGISTRY_ROW = "column.registry_row";    // column registry row of job, set by driver
 
     public static final String DEWPT_COL = "dewpt";
     public static final String IND_RAIN_COL = "ind_rain";
@@ -189,6 +198,11 @@ public class Constants {
 
     public static final String CFG_COLUMN_LIST = "column_list";          // required column list
     public static final String CFG_COLUMN_LIST_SEP = ",";
+    public static final String CFG_COLUMN_DICTIONARY = "column_dictionary";    // resolved column list, set by driver
+    public static final String CFG_COLUMN_DICTIONARY_SAMPLE = "column_dictionary_sample";  // rows sampled to resolve column_list regexs
+    public static final int DFLT_COLUMN_DICTIONARY_SAMPLE = 500;
+    public static final String CFG_COLUMN_REGISTRY_TABLE = "column_registry_table";  // ids of columns missed by the sample
+    public static final String DFLT_COLUMN_REGISTRY_TABLE = "weather_column_registry";
 
 
     public static final String CFG_MA_WINDOW_SIZE = "moving_average_window_size";   // sma window size
@@ -206,6 +220,63 @@ public class Constants {
     public static final String CFG_START_DATETIME = "start_datetime";          // filter start date/time
     public static final String CFG_STOP_DATETIME = "stop_datetime";           // filter end date/time
 
+    public static final String CFG_TIME_SLICES = "time_slices";                 // number of time slices per series
+    public static final int DFLT_TIME_SLICES = 1;
+    public static final String CFG_SLICE_HALO = "slice_halo";                   // halo readings preceding each slice
+    public static final String CFG_READING_INTERVAL = "reading_interval";       // interval between readings in sec
+    public static final long DFLT_READING_INTERVAL = 60 * 60;
+    public static final String CFG_SLICE_RANGE = "slice_range";                 // slicing range, set by driver
+
+    public static final String CFG_BLOCK_SIZE = "block_size";                   // max readings per shuffled block
+    public static final int DFLT_BLOCK_SIZE = 0;
+    public static final String CFG_STATION_MODE = "station_mode";               // shuffle station variables together
+    public static final boolean DFLT_STATION_MODE = false;
+    public static final String CFG_MAP_ONLY = "map_only";                       // run engines in mapper, no shuffle
+    public static final boolean DFLT_MAP_ONLY = false;
+    public static final String CFG_DIRECT_WRITE = "direct_write";               // reducers write via buffered mutator
+    public static final boolean DFLT_DIRECT_WRITE = false;
+    public static final String CFG_WRITE_BUFFER_SIZE = "write_buffer_size";     // direct write buffer size in bytes
+    public static final long DFLT_WRITE_BUFFER_SIZE = 0;
+    public static final String CFG_WRITE_FLUSH_PERIOD = "write_flush_period";   // direct write flush period in msec
+    public static final long DFLT_WRITE_FLUSH_PERIOD = 0;
+    public static final String CFG_BULK_LOAD = "bulk_load";                     // jobs to bulk load table output for
+    public static final String DFLT_BULK_LOAD = "";
+    public static final String BULK_LOAD_ALL = "all";
+    public static final String CFG_BULK_LOAD_DIR = "bulk_load_dir";             // bulk load staging directory
+    public static final String DFLT_BULK_LOAD_DIR = "/tmp/weather_bulk_load";
+    public static final String CFG_SNAPSHOT_INPUT = "snapshot_input";           // read input from table snapshot
+    public static final boolean DFLT_SNAPSHOT_INPUT = false;
+    public static final String CFG_SNAPSHOT_RESTORE_DIR = "snapshot_restore_dir";   // snapshot restore directory
+    public static final String DFLT_SNAPSHOT_RESTORE_DIR = "/tmp/weather_snapshot_restore";
+    public static final String CFG_SALT_BUCKETS = "salt_buckets";               // salt buckets of derived tables
+    public static final int DFLT_SALT_BUCKETS = 0;
+    public static final String CFG_PRESPLIT = "presplit";                       // output table pre-split mode
+    public static final String PRESPLIT_NONE = "none";
+    public static final String PRESPLIT_TIME = "time";
+    public static final String PRESPLIT_INPUT = "input";
+    public static final String DFLT_PRESPLIT = PRESPLIT_NONE;
+    public static final String CFG_PRESPLIT_REGIONS = "presplit_regions";       // number of regions for time pre-split
+    public static final int DFLT_PRESPLIT_REGIONS = 8;
+    public static final String CFG_STORAGE_ENCODING = "storage_encoding";       // encoding of values in created tables
+    public static final String DFLT_STORAGE_ENCODING = "string";
+    public static final String CFG_TABLE_RESET = "table_reset";                 // output table reset mode
+    public static final String TABLE_RESET_DROP = "drop";
+    public static final String TABLE_RESET_TRUNCATE = "truncate";
+    public static final String DFLT_TABLE_RESET = TABLE_RESET_DROP;
+    public static final String CFG_CONVERT_IN_TABLE = "convert_in_table";       // table to convert encoding of
+    public static final String CFG_CONVERT_OUT_TABLE = "convert_out_table";     // converted table
+    public static final String CFG_CONVERT_LAYOUT = "convert_layout";           // storage layout of converted table
+    public static final String DFLT_CONVERT_LAYOUT = "row";
+    public static final String CFG_CONVERT_BENCHMARK = "convert_benchmark";     // benchmark converted table layout
+    public static final boolean DFLT_CONVERT_BENCHMARK = false;
+
+    public static final String CFG_ANALYSIS_BACKEND = "analysis_backend";       // analysis calculation backend
+    public static final String ANALYSIS_BACKEND_MAPREDUCE = "mapreduce";
+    public static final String ANALYSIS_BACKEND_COPROCESSOR = "coprocessor";
+    public static final String DFLT_ANALYSIS_BACKEND = ANALYSIS_BACKEND_MAPREDUCE;
+    public static final String CFG_ANALYSIS_COPROCESSOR_JAR = "analysis_coprocessor_jar";   // coprocessor jar path
+    public static final String CFG_ANALYSIS_COMBINE = "analysis_combine";       // combine partial stats in mapper
+    public static final boolean DFLT_ANALYSIS_COMBINE = true;
     public static final String CFG_NUM_STRATA = "num_strata";                   // number of strata
     public static final int DFLT_NUM_STRATA = 1;
     public static final String CFG_STRATA_WIDTH = "strata_width";                   // width of each strata
@@ -218,6 +289,11 @@ public class Constants {
 
     public static final String STATS_ROW_MARK = "#";
     public static final String STATS_ROW_MARK_REGEX = "^"+STATS_ROW_MARK+".*";
+    public static final byte STATS_ROW_MARK_BYTE = (byte) STATS_ROW_MARK.charAt(0);
+    public static final String SLICE_PARTIAL_SEP = "~";
+    public static final String SLICE_PARTIAL_ROW_MARK = STATS_ROW_MARK + SLICE_PARTIAL_SEP;
+    public static final String SLICE_PARTIAL_COL = "partial";
+    public static final byte[] SLICE_PARTIAL = SLICE_PARTIAL_COL.getBytes();
 
 
     public static final String LAG = "lag";
@@ -25,7 +25,10 @@ package ie.ibuttimer.weather;
 import com.google.common.collect.Lists;
 import ie.ibuttimer.weather.analysis.AnalysisDriver;
 import ie.ibuttimer.weather.arima.ArimaDriver;
+import ie.ibuttimer.weather.convert.ConvertDriver;
+import ie.ibuttimer.weather.hbase.Hbase;
 import ie.ibuttimer.weather.misc.AppLogger;
+import ie.ibuttimer.weather.misc.IDriver;
 import ie.ibuttimer.weather.misc.JobConfig;
 import ie.ibuttimer.weather.misc.Utils;
 import ie.ibuttimer.weather.sma.SmaDriver;
@@ -96,6 +99,7 @@ public class WeatherAnalysis extends Configured implements Tool {
     private static final String JOB_DIFFERENCING = "difference";
     private static final String JOB_SMA = "sma";
     private static final String JOB_ARIMA = "arima";
+    private static final String JOB_CONVERT = "convert";
     private static final List<Triple<String, String, String>> jobList;
     private static final String jobListFmt;
     static {
@@ -105,6 +109,7 @@ public class WeatherAnalysis extends Configured implements Tool {
         jobList.add(Triple.of(JOB_DIFFERENCING, "perform Differencing", "Differencing Job"));
         jobList.add(Triple.of(JOB_SMA, "perform Simple Moving Average", "SMA Job"));
         jobList.add(Triple.of(JOB_ARIMA, "perform ARIMA", "ARIMA Job"));
+        jobList.add(Triple.of(JOB_CONVERT, "convert table storage encoding or layout", "Convert Job"));
 
         OptionalInt width = jobList.stream().map(Triple::getLeft).mapToInt(String::length).max();
         StringBuffer sb = new StringBuffer("  %");
@@ -178,6 +183,9 @@ public class WeatherAnalysis extends Configured implements Tool {
         } catch (Exception e) {
             logger.error(String.format("%s%n%n", e.getMessage()), e);
             resultCode = STATUS_FAIL;
+        } finally {
+            // hbase connection is shared by all jobs
+            Hbase.closeAll();
         }
 
         return resultCode;
@@ -261,27 +269,38 @@ public class WeatherAnalysis extends Configured implements Tool {
 
                         Configuration config = HBaseConfiguration.create(getConf());
 
+                        IDriver driver = null;
                         switch (name) {
                             case JOB_ANALYSIS:
-                                resultCode = AnalysisDriver.of(logger).runJob(config, jobCfg);
+                                driver = AnalysisDriver.of(logger);
                                 break;
                             case JOB_TRANSFORM:
-                                resultCode = TransformDriver.of(logger).runJob(config, jobCfg);
+                                driver = TransformDriver.of(logger);
                                 break;
                             case JOB_DIFFERENCING:
-                                resultCode = DifferencingDriver.of(logger).runJob(config, jobCfg);
+                                driver = DifferencingDriver.of(logger);
                                 break;
                             case JOB_SMA:
-                                resultCode = SmaDriver.of(logger).runJob(config, jobCfg);
+                                driver = SmaDriver.of(logger);
                                 break;
                             case JOB_ARIMA:
-                                resultCode = ArimaDriver.of(logger).runJob(config, jobCfg);
+                                driver = ArimaDriver.of(logger);
+                                break;
+                            case JOB_CONVERT:
+                                driver = ConvertDriver.of(logger);
                                 break;
                             default:
                                 logger.warn(String.format("Unknown job: %s%n%n", cmd.getOptionValue(OPT_JOB)));
                                 jobList();
                                 resultCode = STATUS_CONFIG_ERROR;
                         }
+                        if (driver != null) {
+                            try {
+                                resultCode = driver.runJob(config, jobCfg);
+                            } finally {
+                                driver.cleanup();   // e.g. remove the input snapshot of a job which did not start
+                            }
+                        }
                     }
                 } else {
                     System.out.format("No arguments specified%n%n");
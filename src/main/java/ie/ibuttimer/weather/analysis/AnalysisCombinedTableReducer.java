@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.analysis;
+
+import ie.ibuttimer.weather.common.ColumnDictionary;
+import ie.ibuttimer.weather.common.CompositeKey;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import org.apache.hadoop.hbase.mapreduce.TableReducer;
+import org.apache.hadoop.io.Text;
+
+import java.io.IOException;
+
+import static ie.ibuttimer.weather.Constants.OUTPUT_ENCODING;
+import static ie.ibuttimer.weather.analysis.AnalysisTableReducer.logStats;
+
+/**
+ * Reducer to merge the partial statistics generated by AnalysisMapper
+ */
+public class AnalysisCombinedTableReducer extends TableReducer<CompositeKey, StatsAccumulator, Text> {
+
+    private final StatsAccumulator overall = new StatsAccumulator();
+    private ColumnDictionary dictionary;
+    private StorageEncoding encoding;
+
+    @Override
+    protected void setup(Context context) {
+        this.dictionary = ColumnDictionary.of(context.getConfiguration());
+        this.encoding = StorageEncoding.of(context.getConfiguration(), OUTPUT_ENCODING);
+    }
+
+    @Override
+    protected void reduce(CompositeKey key, Iterable<StatsAccumulator> values, Context context) throws IOException, InterruptedException {
+
+        overall.reset();
+        values.forEach(overall::merge);
+
+        // add entry with column name as row id
+        String name = dictionary.getName(key.getId());
+        logStats(name, "overall", overall);
+
+        context.write(null, overall.toPut(name, encoding));
+    }
+}
@@ -24,25 +24,28 @@ package ie.ibuttimer.weather.analysis;
 
 import com.google.common.collect.Lists;
 import ie.ibuttimer.weather.common.AbstractDriver;
-import ie.ibuttimer.weather.common.CKTSMapper;
 import ie.ibuttimer.weather.common.CompositeKey;
-import ie.ibuttimer.weather.common.TimeSeriesData;
 import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
 import ie.ibuttimer.weather.misc.AppLogger;
 import ie.ibuttimer.weather.misc.IDriver;
 import ie.ibuttimer.weather.misc.JobConfig;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
 import org.apache.hadoop.mapreduce.Job;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import static ie.ibuttimer.weather.Constants.*;
 import static ie.ibuttimer.weather.analysis.AnalysisTableReducer.columnNameBytes;
+import static ie.ibuttimer.weather.analysis.AnalysisTableReducer.logStats;
 
 public class AnalysisDriver extends AbstractDriver implements IDriver {
 
@@ -65,38 +68,33 @@ public class AnalysisDriver extends AbstractDriver implements IDriver {
         if (resultCode == STATUS_SUCCESS) {
 
             Map<String, String> map = properties.getRight();
-
-            Job job = initJob(config, jobCfg, "Analysis");
-
-            TableMapReduceUtil.initTableMapperJob(
-                    map.get(CFG_ANALYSIS_IN_TABLE), // input table
-                    initScan(jobCfg),     // Scan instance to control CF and attribute selection
-                    CKTSMapper.class,     // mapper class
-                    CompositeKey.class,   // mapper output key
-                    TimeSeriesData.class, // mapper output value
-                    job);
-
-            // create output table if necessary
+            String inTable = map.get(CFG_ANALYSIS_IN_TABLE);
             String analysisTable = map.get(CFG_ANALYSIS_OUT_TABLE);
-            Hbase hbase = null;
-            try {
-                hbase = createTable(jobCfg, analysisTable);
-
-                addStatsToConfig(hbase, jobCfg, analysisTable, config, Arrays.asList(MEAN, VARIANCE));
 
-            } finally {
-                if (hbase != null) {
-                    hbase.closeConnection();
+            String backend = jobCfg.getProperty(CFG_ANALYSIS_BACKEND, DFLT_ANALYSIS_BACKEND);
+            if (backend.equalsIgnoreCase(ANALYSIS_BACKEND_COPROCESSOR) &&
+                    (jobCfg.getProperty(CFG_NUM_STRATA, DFLT_NUM_STRATA) > 1) &&
+                    (hbaseConnection(jobCfg).getSaltBuckets(inTable) > 0)) {
+                // strata are based on the reading order, which regions of salted tables are not in
+                logger.warn(inTable + " has salted row keys, strata require " + ANALYSIS_BACKEND_MAPREDUCE);
+                backend = ANALYSIS_BACKEND_MAPREDUCE;
+            }
+            if (backend.equalsIgnoreCase(ANALYSIS_BACKEND_COPROCESSOR) &&
+                    hbaseConnection(jobCfg).getLayout(inTable).isBlock()) {
+                // the endpoint reads rows of readings
+                logger.warn(inTable + " has block storage layout, using " + ANALYSIS_BACKEND_MAPREDUCE);
+                backend = ANALYSIS_BACKEND_MAPREDUCE;
+            }
+            if (backend.equalsIgnoreCase(ANALYSIS_BACKEND_COPROCESSOR)) {
+                resultCode = runCoprocessor(jobCfg, inTable, analysisTable);
+            } else {
+                if (!backend.equalsIgnoreCase(ANALYSIS_BACKEND_MAPREDUCE)) {
+                    logger.warn("Unknown " + CFG_ANALYSIS_BACKEND + " '" + backend + "', using " +
+                            ANALYSIS_BACKEND_MAPREDUCE);
                 }
+                resultCode = runMapReduce(config, jobCfg, inTable, analysisTable);
             }
 
-            TableMapReduceUtil.initTableReducerJob(
-                    analysisTable,   // output table
-                    AnalysisTableReducer.class,   // reducer class
-                    job);
-
-            resultCode = startJob(job, jobCfg);
-
             if (resultCode == STATUS_SUCCESS) {
                 saveResults(jobCfg, analysisTable, logger);
             }
@@ -104,6 +102,92 @@ public class AnalysisDriver extends AbstractDriver implements IDriver {
         return resultCode;
     }
 
+    /**
+     * Calculate the statistics in a MapReduce job
+     * @param config        Configuration
+     * @param jobCfg        Job configuration
+     * @param inTable       Input table
+     * @param analysisTable Output table
+     * @return  Result code
+     */
+    private int runMapReduce(Configuration config, JobConfig jobCfg, String inTable, String analysisTable)
+            throws IOException, ClassNotFoundException, InterruptedException {
+
+        Job job = initJob(config, jobCfg, "Analysis");
+
+        // strata are based on the reading order, so need every reading in the reducer
+        boolean combine = jobCfg.getProperty(CFG_ANALYSIS_COMBINE, DFLT_ANALYSIS_COMBINE) &&
+                (jobCfg.getProperty(CFG_NUM_STRATA, DFLT_NUM_STRATA) <= 1);
+
+        if (combine) {
+            initTableMapperJob(
+                    inTable,                // input table
+                    initScan(jobCfg),       // Scan instance to control CF and attribute selection
+                    AnalysisMapper.class,   // mapper class
+                    CompositeKey.class,     // mapper output key
+                    StatsAccumulator.class, // mapper output value
+                    job, jobCfg);
+        } else {
+            // analysis reducer processes individual series, so no station mode
+            initSeriesMapperJob(
+                    inTable,              // input table
+                    initScan(jobCfg),     // Scan instance to control CF and attribute selection
+                    false,
+                    job, jobCfg);
+        }
+
+        // create output table if necessary
+        Hbase hbase = createTable(jobCfg, analysisTable);
+
+        addStatsToConfig(hbase, jobCfg, analysisTable, config, Arrays.asList(MEAN, VARIANCE));
+
+        TableMapReduceUtil.initTableReducerJob(
+                analysisTable,   // output table
+                combine ? AnalysisCombinedTableReducer.class : AnalysisTableReducer.class,   // reducer class
+                job);
+
+        return startJob(job, jobCfg);
+    }
+
+    /**
+     * Calculate the statistics on the region servers, using the region stats endpoint coprocessor
+     * @param jobCfg        Job configuration
+     * @param inTable       Input table
+     * @param analysisTable Output table
+     * @return  Result code
+     */
+    private int runCoprocessor(JobConfig jobCfg, String inTable, String analysisTable) throws IOException {
+
+        // create output table if necessary
+        Hbase hbase = createTable(jobCfg, analysisTable);
+
+        String jar = jobCfg.getProperty(CFG_ANALYSIS_COPROCESSOR_JAR, "");
+        if (!StringUtils.isEmpty(jar) && hbase.addCoprocessor(inTable, RegionStatsEndpoint.class.getName(), jar)) {
+            logger.logger().info("Loaded " + RegionStatsEndpoint.class.getSimpleName() + " on " + inTable);
+        }
+
+        Map<String, StatsAccumulator[]> stats = RegionStatsEndpoint.aggregate(hbase, inTable,
+                initScan(jobCfg),
+                jobCfg.getProperty(CFG_COLUMN_LIST, ""),
+                jobCfg.getProperty(CFG_KEY_TYPE_MAP, ""),
+                jobCfg.getProperty(CFG_NUM_STRATA, DFLT_NUM_STRATA),
+                jobCfg.getProperty(CFG_STRATA_WIDTH, DFLT_STRATA_WIDTH));
+
+        // add entries with column name as row id, overall followed by strata
+        StorageEncoding encoding = hbase.getEncoding(analysisTable);
+        List<Put> puts = new ArrayList<>();
+        stats.forEach((name, accumulators) -> {
+            for (int i = 0; i < accumulators.length; ++i) {
+                int index = i - 1;
+                logStats(name, (index < 0) ? "overall" : "strata_" + index, accumulators[i]);
+                puts.add(accumulators[i].toPut(name, index, encoding));
+            }
+        });
+        hbase.put(analysisTable, puts);
+
+        return STATUS_SUCCESS;
+    }
+
     public static void saveResults(JobConfig jobCfg, String table, AppLogger logger) throws IOException {
 
         int numStrata = jobCfg.getProperty(CFG_NUM_STRATA, DFLT_NUM_STRATA);
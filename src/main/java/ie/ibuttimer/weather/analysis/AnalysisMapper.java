@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.analysis;
+
+import ie.ibuttimer.weather.common.AbstractTSMapper;
+import ie.ibuttimer.weather.common.CompositeKey;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mapper to accumulate partial statistics for each column.
+ * Readings are combined in the mapper, and a single partial result per column is output as
+ * CompositeKey(column id, min timestamp), StatsAccumulator when the map task completes.
+ */
+public class AnalysisMapper extends AbstractTSMapper<StatsAccumulator> {
+
+    private final Map<Integer, StatsAccumulator> partials = new HashMap<>();
+
+    private final CompositeKey reducerKey = new CompositeKey();
+
+    @Override
+    protected void output(Context context, int id, long timestamp, float value) {
+        partials.computeIfAbsent(id, k -> new StatsAccumulator())
+                .addValue(value, timestamp);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (Map.Entry<Integer, StatsAccumulator> entry : partials.entrySet()) {
+            StatsAccumulator accumulator = entry.getValue();
+            reducerKey.set(entry.getKey().intValue(), accumulator.getMinTimestamp());
+            context.write(reducerKey, accumulator);
+        }
+        partials.clear();
+
+        super.cleanup(context);
+    }
+}
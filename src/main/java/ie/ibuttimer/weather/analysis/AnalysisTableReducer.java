@@ -22,13 +22,13 @@
 
 package ie.ibuttimer.weather.analysis;
 
+import ie.ibuttimer.weather.common.ColumnDictionary;
 import ie.ibuttimer.weather.common.CompositeKey;
 import ie.ibuttimer.weather.common.TimeSeriesData;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
 import ie.ibuttimer.weather.misc.AppLogger;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.mapreduce.TableReducer;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.Text;
 import org.apache.log4j.Logger;
 
@@ -36,7 +36,6 @@ import java.io.IOException;
 import java.util.Arrays;
 
 import static ie.ibuttimer.weather.Constants.*;
-import static ie.ibuttimer.weather.hbase.Hbase.storeValueAsString;
 
 /**
  * Reducer to perform statistical analysis
@@ -64,6 +63,8 @@ public class AnalysisTableReducer extends TableReducer<CompositeKey, TimeSeriesD
     private int[] widths;
     private int current_strata;
     private StatsAccumulator overall;
+    private ColumnDictionary dictionary;
+    private StorageEncoding encoding;
 
     @Override
     protected void setup(Context context) {
@@ -72,6 +73,7 @@ public class AnalysisTableReducer extends TableReducer<CompositeKey, TimeSeriesD
 
         this.num_strata = conf.getInt(CFG_NUM_STRATA, DFLT_NUM_STRATA);
         this.strata_width = conf.getInt(CFG_STRATA_WIDTH, DFLT_STRATA_WIDTH);
+        this.encoding = StorageEncoding.of(conf, OUTPUT_ENCODING);
         this.accumulators = new StatsAccumulator[this.num_strata];
         for (int i = 0; i < this.num_strata; ++i) {
             this.accumulators[i] = new StatsAccumulator();
@@ -80,6 +82,7 @@ public class AnalysisTableReducer extends TableReducer<CompositeKey, TimeSeriesD
         Arrays.fill(widths, 0);
         this.current_strata = 0;
         this.overall = new StatsAccumulator();
+        this.dictionary = ColumnDictionary.of(conf);
     }
 
     @Override
@@ -87,26 +90,28 @@ public class AnalysisTableReducer extends TableReducer<CompositeKey, TimeSeriesD
 
         values.forEach(v -> {
 
-            // CompositeKey(column name, timestamp), TimeSeriesData(timestamp, float value)
+            // CompositeKey(column id, timestamp), TimeSeriesData(float value) or TimeSeriesBlock(float values)
 
-            double value = v.getValue().doubleValue();
-            long timestamp = v.getTimestamp();
+            for (int i = 0; i < v.getCount(); i++) {
+                double value = v.getValue(i);
+                long timestamp = key.getTimestamp() + v.getOffset(i);
 
-            overall.addValue(value, timestamp);
+                overall.addValue(value, timestamp);
 
-            if (num_strata > 1) {
-                accumulators[current_strata].addValue(value, timestamp);
+                if (num_strata > 1) {
+                    accumulators[current_strata].addValue(value, timestamp);
 
-                ++widths[current_strata];
-                if (widths[current_strata] == strata_width) {
-                    widths[current_strata] = 0;
-                    current_strata = (current_strata + 1) % num_strata;
+                    ++widths[current_strata];
+                    if (widths[current_strata] == strata_width) {
+                        widths[current_strata] = 0;
+                        current_strata = (current_strata + 1) % num_strata;
+                    }
                 }
             }
         });
 
         // add entry with column name as row id
-        String name = key.getMainKey();
+        String name = dictionary.getName(key.getId());
         write(context, overall, -1, name);
         if (num_strata > 1) {
             for (int i = 0; i < num_strata; ++i) {
@@ -116,31 +121,23 @@ public class AnalysisTableReducer extends TableReducer<CompositeKey, TimeSeriesD
     }
 
     private void write(Context context, StatsAccumulator accumulator, int index, String name) throws IOException, InterruptedException {
-        String minTs = accumulator.getMinTimestamp(DATETIME_FMT);
-        String maxTs = accumulator.getMaxTimestamp(DATETIME_FMT);
-        Put put = new Put(Bytes.toBytes(STATS_ROW_MARK + name))
-                .addColumn(FAMILY_BYTES, columnNameBytes(COUNT, index), storeValueAsString(accumulator.getCount()))
-                .addColumn(FAMILY_BYTES, columnNameBytes(MIN, index), storeValueAsString(accumulator.getMin()))
-                .addColumn(FAMILY_BYTES, columnNameBytes(MAX, index), storeValueAsString(accumulator.getMax()))
-                .addColumn(FAMILY_BYTES, columnNameBytes(MEAN, index), storeValueAsString(accumulator.getMean()))
-                .addColumn(FAMILY_BYTES, columnNameBytes(VARIANCE, index), storeValueAsString(accumulator.getVariance()))
-                .addColumn(FAMILY_BYTES, columnNameBytes(STD_DEV, index), storeValueAsString(accumulator.getSetDev()))
-                .addColumn(FAMILY_BYTES, columnNameBytes(MIN_TS, index), storeValueAsString(minTs))
-                .addColumn(FAMILY_BYTES, columnNameBytes(MAX_TS, index), storeValueAsString(maxTs));
-
         String label;
         if (index < 0) {
             label = "overall";
         } else {
             label = "strata_" + index;
         }
+        logStats(name, label, accumulator);
+
+        context.write(null, accumulator.toPut(name, index, encoding));
+    }
+
+    static void logStats(String name, String label, StatsAccumulator accumulator) {
         logger.logger().info(
                 String.format("%s: %s - count=%d  min=%f  max=%f  mean=%f  variance=%f  stdDev=%f  minTs=%s  maxTs=%s",
                         name, label, accumulator.getCount(), accumulator.getMin(), accumulator.getMax(),
-                        accumulator.getMean(), accumulator.getVariance(), accumulator.getSetDev(), minTs, maxTs));
-
-        context.write(null, put);
-
+                        accumulator.getMean(), accumulator.getVariance(), accumulator.getSetDev(),
+                        accumulator.getMinTimestamp(DATETIME_FMT), accumulator.getMaxTimestamp(DATETIME_FMT)));
     }
 
     @Override
@@ -0,0 +1,380 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.analysis;
+
+import ie.ibuttimer.weather.common.QualifierCache;
+import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.RegionEndpoint;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.hbase.TypeMap;
+import ie.ibuttimer.weather.misc.DataTypes;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.regionserver.Region;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static ie.ibuttimer.weather.Constants.*;
+import static ie.ibuttimer.weather.hbase.TypeMap.STRING_MAPPER;
+
+/**
+ * Endpoint coprocessor to calculate the partial statistics of the required columns of a region, as per the analysis
+ * job, so the statistics are calculated where the data lives rather than in a MapReduce job.
+ *
+ * Strata are based on the order of the readings of a column, so the strata of a region's readings depend on the
+ * number of readings in the preceding regions. When strata are required, a first call gets the overall statistics
+ * of each region, from which the reading offsets of the regions are determined, and a second call gets the strata
+ * statistics.
+ */
+public class RegionStatsEndpoint extends RegionEndpoint {
+
+    private static final ColumnStats NOT_REQUIRED = new ColumnStats("", null, 0, 0, 0);
+
+    /**
+     * Calculate the statistics of the required columns of a table
+     * @param hbase         Hbase instance
+     * @param tableName     Name of table
+     * @param scan          Scan controlling row range & attribute selection
+     * @param columnList    Required column list; literal names or regexs
+     * @param typeMap       Encoded type map of the columns
+     * @param numStrata     Number of strata
+     * @param strataWidth   Width of each strata
+     * @return  Map of column name and its statistics; overall followed by the strata if required
+     * @throws IOException
+     * @throws IllegalArgumentException if strata are required from a table with salted row keys
+     */
+    public static Map<String, StatsAccumulator[]> aggregate(Hbase hbase, String tableName, Scan scan,
+                                                            String columnList, String typeMap,
+                                                            int numStrata, int strataWidth) throws IOException {
+
+        boolean strata = (numStrata > 1);
+        int saltBuckets = hbase.getSaltBuckets(tableName);
+        if (saltBuckets > 0) {
+            if (strata) {
+                throw new IllegalArgumentException("Strata require time ordered regions, " + tableName +
+                        " has salted row keys");
+            }
+            scan = Hbase.saltScan(scan, saltBuckets);
+        }
+        List<RegionStats> regions = call(hbase, tableName, scan, columnList, typeMap, 1, 1, Collections.emptyMap());
+
+        Map<String, StatsAccumulator[]> stats = new TreeMap<>();
+        Map<String, Map<String, Long>> offsets = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        for (RegionStats region : regions) {
+            Map<String, Long> regionOffsets = new HashMap<>();
+            region.columns.forEach((name, column) -> {
+                stats.computeIfAbsent(name, k -> newAccumulators(strata ? numStrata + 1 : 1))[0]
+                        .merge(column.overall);
+
+                long count = counts.getOrDefault(name, 0L);
+                regionOffsets.put(name, count);
+                counts.put(name, count + column.overall.getCount());
+            });
+            offsets.put(Bytes.toStringBinary(region.startKey), regionOffsets);
+        }
+
+        if (strata) {
+            regions = call(hbase, tableName, scan, columnList, typeMap, numStrata, strataWidth, offsets);
+            for (RegionStats region : regions) {
+                region.columns.forEach((name, column) -> {
+                    StatsAccumulator[] accumulators = stats.get(name);
+                    for (int i = 0; i < numStrata; ++i) {
+                        accumulators[i + 1].merge(column.strata[i]);
+                    }
+                });
+            }
+        }
+        return stats;
+    }
+
+    private static StatsAccumulator[] newAccumulators(int count) {
+        StatsAccumulator[] accumulators = new StatsAccumulator[count];
+        for (int i = 0; i < count; ++i) {
+            accumulators[i] = new StatsAccumulator();
+        }
+        return accumulators;
+    }
+
+    /**
+     * Call the endpoint on the regions of a table
+     * @param offsets   Reading offsets of the columns, keyed by region start key, required for strata
+     * @return  Region statistics in region order
+     */
+    private static List<RegionStats> call(Hbase hbase, String tableName, Scan scan, String columnList,
+                                          String typeMap, int numStrata, int strataWidth,
+                                          Map<String, Map<String, Long>> offsets) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            WritableUtils.writeString(out, TableMapReduceUtil.convertScanToString(scan));
+            WritableUtils.writeString(out, columnList);
+            WritableUtils.writeString(out, typeMap);
+            out.writeInt(numStrata);
+            out.writeInt(strataWidth);
+            out.writeInt(offsets.size());
+            for (Map.Entry<String, Map<String, Long>> region : offsets.entrySet()) {
+                WritableUtils.writeString(out, region.getKey());
+                out.writeInt(region.getValue().size());
+                for (Map.Entry<String, Long> column : region.getValue().entrySet()) {
+                    WritableUtils.writeString(out, column.getKey());
+                    out.writeLong(column.getValue());
+                }
+            }
+        }
+
+        List<RegionStats> regions = new ArrayList<>();
+        for (byte[] response : hbase.callEndpoint(tableName, RegionStatsEndpoint.class,
+                scan.getStartRow(), scan.getStopRow(), bytes.toByteArray())) {
+            regions.add(RegionStats.of(response));
+        }
+        regions.sort((r1, r2) -> Bytes.compareTo(r1.startKey, r2.startKey));
+        return regions;
+    }
+
+    @Override
+    protected byte[] call(Region region, byte[] request) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+        Scan scan = TableMapReduceUtil.convertStringToScan(WritableUtils.readString(in));
+        Pattern[] columnPatterns = Arrays.stream(WritableUtils.readString(in).split(CFG_COLUMN_LIST_SEP))
+                .map(Pattern::compile)
+                .toArray(Pattern[]::new);
+        String param = WritableUtils.readString(in);
+        TypeMap typeMap = StringUtils.isEmpty(param) ? STRING_MAPPER : TypeMap.of(param);
+        int numStrata = in.readInt();
+        int strataWidth = in.readInt();
+
+        byte[] startKey = region.getRegionInfo().getStartKey();
+        String regionKey = Bytes.toStringBinary(startKey);
+        Map<String, Long> offsets = null;
+        for (int regionCount = in.readInt(); regionCount > 0; --regionCount) {
+            String key = WritableUtils.readString(in);
+            Map<String, Long> columnOffsets = new HashMap<>();
+            for (int columnCount = in.readInt(); columnCount > 0; --columnCount) {
+                columnOffsets.put(WritableUtils.readString(in), in.readLong());
+            }
+            if (key.equals(regionKey)) {
+                offsets = columnOffsets;
+            }
+        }
+        if ((numStrata > 1) && (offsets == null)) {
+            throw new IOException("No reading offsets for region " + regionKey + ", region boundaries changed");
+        }
+
+        StorageEncoding encoding = StorageEncoding.of(region.getTableDescriptor());
+        Map<String, ColumnStats> stats = new HashMap<>();
+        QualifierCache<ColumnStats> columns = new QualifierCache<>();
+
+        try (RegionScanner scanner = region.getScanner(scan)) {
+            List<Cell> cells = new ArrayList<>();
+            boolean more;
+            do {
+                cells.clear();
+                more = scanner.next(cells);
+                if (cells.isEmpty()) {
+                    continue;   // scan is bounded to the reading rows, so no stats rows
+                }
+
+                long timestamp = readingTimestamp(cells);
+
+                for (Cell cell : cells) {
+                    if (!CellUtil.matchingFamily(cell, FAMILY_BYTES)) {
+                        continue;
+                    }
+                    ColumnStats column = columns.get(cell.getQualifierArray(), cell.getQualifierOffset(),
+                            cell.getQualifierLength());
+                    if (column == null) {
+                        String name = Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(),
+                                cell.getQualifierLength());
+                        if (!name.equals(DATE_COL) &&
+                                Arrays.stream(columnPatterns).anyMatch(p -> p.matcher(name).matches())) {
+                            DataTypes type = encoding.isBinary() ? encoding.getType() :
+                                    typeMap.getType(name).orElse(null);
+                            long offset = (offsets == null) ? 0 : offsets.getOrDefault(name, 0L);
+                            column = new ColumnStats(name, type, numStrata, strataWidth, offset);
+                            stats.put(name, column);
+                        } else {
+                            column = NOT_REQUIRED;
+                        }
+                        columns.put(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength(),
+                                column);
+                    }
+                    if ((column != NOT_REQUIRED) && (column.type != null)) {
+                        readValue(column, cell, timestamp);
+                    }
+                }
+            } while (more);
+        }
+
+        return new RegionStats(startKey, stats).toBytes();
+    }
+
+    /**
+     * Get the timestamp of a row's readings, from the date column or the row key
+     * @param cells     Cells of row
+     * @return  Timestamp
+     */
+    private static long readingTimestamp(List<Cell> cells) {
+        for (Cell cell : cells) {
+            if (CellUtil.matchingFamily(cell, FAMILY_BYTES) && CellUtil.matchingQualifier(cell, DATE_ATTR)) {
+                return RowKeyCodec.decodeDateTime(cell.getValueArray(), cell.getValueOffset(),
+                        cell.getValueLength());
+            }
+        }
+        Cell first = cells.get(0);
+        return RowKeyCodec.decodeRowKey(first.getRowArray(), first.getRowOffset(), first.getRowLength());
+    }
+
+    /**
+     * Add the value of a cell to the statistics of its column; values are read as per the analysis job mapper
+     * @param column    Column statistics
+     * @param cell      Cell
+     * @param timestamp Reading timestamp
+     */
+    private static void readValue(ColumnStats column, Cell cell, long timestamp) {
+        byte[] buffer = cell.getValueArray();
+        int offset = cell.getValueOffset();
+        int length = cell.getValueLength();
+
+        float val = 0;
+        switch (column.type) {
+            case STRING:
+                if (length == 0) {
+                    return;     // empty string
+                }
+                try {
+                    val = (float) TypeMap.decodeDouble(column.type, buffer, offset, length);
+                } catch (NumberFormatException nfe) {
+                    // unreadable values are zero, as per mapper
+                }
+                break;
+            case FLOAT:
+            case DOUBLE:
+                try {
+                    val = (float) TypeMap.decodeDouble(column.type, buffer, offset, length);
+                } catch (NumberFormatException nfe) {
+                    return;     // not a binary value of the type, skipped as per mapper
+                }
+                break;
+            default:
+                return;
+        }
+        column.addValue(val, timestamp);
+    }
+
+    /**
+     * Partial statistics of a column in a region
+     */
+    private static class ColumnStats {
+        final String name;
+        final DataTypes type;
+        final StatsAccumulator overall = new StatsAccumulator();
+        final StatsAccumulator[] strata;
+        final int strataWidth;
+        final long offset;      // number of readings of the column in the preceding regions
+
+        ColumnStats(String name, DataTypes type, int numStrata, int strataWidth, long offset) {
+            this.name = name;
+            this.type = type;
+            this.strata = newAccumulators((numStrata > 1) ? numStrata : 0);
+            this.strataWidth = strataWidth;
+            this.offset = offset;
+        }
+
+        void addValue(double value, long timestamp) {
+            if (strata.length > 0) {
+                long index = offset + overall.getCount();
+                strata[(int) ((index / strataWidth) % strata.length)].addValue(value, timestamp);
+            }
+            overall.addValue(value, timestamp);
+        }
+
+        void write(DataOutput out) throws IOException {
+            WritableUtils.writeString(out, name);
+            overall.write(out);
+            out.writeInt(strata.length);
+            for (StatsAccumulator accumulator : strata) {
+                accumulator.write(out);
+            }
+        }
+
+        static ColumnStats read(DataInput in) throws IOException {
+            String name = WritableUtils.readString(in);
+            StatsAccumulator overall = new StatsAccumulator();
+            overall.readFields(in);
+            int numStrata = in.readInt();
+            ColumnStats column = new ColumnStats(name, null, numStrata, 1, 0);
+            column.overall.merge(overall);
+            for (StatsAccumulator accumulator : column.strata) {
+                accumulator.readFields(in);
+            }
+            return column;
+        }
+    }
+
+    /**
+     * Partial statistics of the columns of a region
+     */
+    private static class RegionStats {
+        final byte[] startKey;
+        final Map<String, ColumnStats> columns;
+
+        RegionStats(byte[] startKey, Map<String, ColumnStats> columns) {
+            this.startKey = startKey;
+            this.columns = columns;
+        }
+
+        static RegionStats of(byte[] bytes) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            byte[] startKey = Bytes.readByteArray(in);
+            Map<String, ColumnStats> columns = new HashMap<>();
+            for (int count = in.readInt(); count > 0; --count) {
+                ColumnStats column = ColumnStats.read(in);
+                columns.put(column.name, column);
+            }
+            return new RegionStats(startKey, columns);
+        }
+
+        byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                Bytes.writeByteArray(out, startKey);
+                out.writeInt(columns.size());
+                for (ColumnStats column : columns.values()) {
+                    column.write(out);
+                }
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
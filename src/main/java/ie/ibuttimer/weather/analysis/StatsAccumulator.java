@@ -22,18 +22,32 @@
 
 package ie.ibuttimer.weather.analysis;
 
+import ie.ibuttimer.weather.common.IPartialStats;
+import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
+import static ie.ibuttimer.weather.Constants.*;
+import static ie.ibuttimer.weather.analysis.AnalysisTableReducer.columnNameBytes;
+
 
 /**
  * Basic stats calculation
  *
  * - Calculated mean and standard deviation based on
  *   https://learning.oreilly.com/library/view/Art+of+Computer+Programming,+Volume+2,+The:+Seminumerical+Algorithms/9780321635778/ch04.html#page_232
+ * - Partial results are combined based on the parallel algorithm in
+ *   https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Parallel_algorithm
  */
-public class StatsAccumulator {
+public class StatsAccumulator implements IPartialStats<StatsAccumulator> {
     private long count;
     private double min;
     private double max;
@@ -78,6 +92,40 @@ public class StatsAccumulator {
         }
     }
 
+    /**
+     * Merge another accumulator into this accumulator
+     * @param other     Accumulator to merge
+     */
+    @Override
+    public void merge(StatsAccumulator other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            variance = other.variance;
+        } else {
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += (delta * other.count / total);
+            variance += other.variance + (delta * delta * count * other.count / total);
+            count = total;
+        }
+        if (other.min < min) {
+            min = other.min;
+        }
+        if (other.max > max) {
+            max = other.max;
+        }
+        if (other.minTimestamp < minTimestamp) {
+            minTimestamp = other.minTimestamp;
+        }
+        if (other.maxTimestamp > maxTimestamp) {
+            maxTimestamp = other.maxTimestamp;
+        }
+    }
+
     public long getCount() {
         return count;
     }
@@ -126,6 +174,56 @@ public class StatsAccumulator {
         this.tag = tag;
     }
 
+    /**
+     * Generate the stats row entry for this accumulator
+     * @param name      Column name
+     * @param index     Strata index, or -1 for overall
+     * @return  Put
+     */
+    public Put toPut(String name, int index, StorageEncoding encoding) {
+        return new Put(Bytes.toBytes(STATS_ROW_MARK + name))
+                .addColumn(FAMILY_BYTES, columnNameBytes(COUNT, index), encoding.encode(count))
+                .addColumn(FAMILY_BYTES, columnNameBytes(MIN, index), encoding.encode(min))
+                .addColumn(FAMILY_BYTES, columnNameBytes(MAX, index), encoding.encode(max))
+                .addColumn(FAMILY_BYTES, columnNameBytes(MEAN, index), encoding.encode(mean))
+                .addColumn(FAMILY_BYTES, columnNameBytes(VARIANCE, index), encoding.encode(variance))
+                .addColumn(FAMILY_BYTES, columnNameBytes(STD_DEV, index), encoding.encode(getSetDev()))
+                .addColumn(FAMILY_BYTES, columnNameBytes(MIN_TS, index), Hbase.storeValueAsString(getMinTimestamp(DATETIME_FMT)))
+                .addColumn(FAMILY_BYTES, columnNameBytes(MAX_TS, index), Hbase.storeValueAsString(getMaxTimestamp(DATETIME_FMT)));
+    }
+
+    @Override
+    public Put toPut(String tag, StorageEncoding encoding) {
+        return toPut(tag, -1, encoding);
+    }
+
+    /**
+     * Serialise the partial result, the tag is not included
+     * @param out   Output
+     * @throws IOException
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeDouble(mean);
+        out.writeDouble(variance);
+        out.writeLong(minTimestamp);
+        out.writeLong(maxTimestamp);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        count = in.readLong();
+        min = in.readDouble();
+        max = in.readDouble();
+        mean = in.readDouble();
+        variance = in.readDouble();
+        minTimestamp = in.readLong();
+        maxTimestamp = in.readLong();
+    }
+
     @Override
     public String toString() {
         return "StatsAccumulator{" +
@@ -25,9 +25,7 @@ package ie.ibuttimer.weather.arima;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
 import ie.ibuttimer.weather.common.AbstractDriver;
-import ie.ibuttimer.weather.common.CKTSMapper;
-import ie.ibuttimer.weather.common.CompositeKey;
-import ie.ibuttimer.weather.common.TimeSeriesData;
+import ie.ibuttimer.weather.common.ModelMetrics;
 import ie.ibuttimer.weather.hbase.Hbase;
 import ie.ibuttimer.weather.hbase.TypeMap;
 import ie.ibuttimer.weather.misc.*;
@@ -95,13 +93,7 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
                         logger.logger().info(heading(
                                 String.format("%nStep %d - Clear", step.ordinal() + 1)));
 
-                        try {
-                            hbase = deleteTables(jobCfg, Arrays.asList(stepOutTable, lagOutTable, arimaOutTable));
-                        } finally {
-                            if (hbase != null) {
-                                hbase.closeConnection();
-                            }
-                        }
+                        resetTables(jobCfg, Arrays.asList(stepOutTable, lagOutTable, arimaOutTable));
                         break;
 
                     case DIFFERENCING:
@@ -115,7 +107,7 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
                         jobCfg.setProperty(CFG_DIFFERENCING, STEP+ "," + arimaD);
 //                        jobCfg.setProperty(CFG_DIFFERENCING, SEASON+ "," + (24*365));
 
-                        resultCode = DifferencingDriver.of(logger).runJob(config, jobCfg);
+                        resultCode = runDriver(DifferencingDriver.of(logger), config, jobCfg);
 
                         // Output columns: xxxx_1234_step_0 etc.
                         // for next step
@@ -135,21 +127,14 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
 
                             // perform lagging
                             Optional<String> diffColumn;
-                            try {
-                                hbase = hbaseConnection(jobCfg);
-
-                                // add stats
-                                HashBasedTable<String, String, Value> stats = loadStats(hbase, jobCfg, stepInTable,
-                                        STATS_ROW_MARK_REGEX, statsList);
-                                addStatsToConfig(stats, config);    // only req if zero transforming
-
-                                // identify target column
-                                diffColumn = idTargetColumn(stats, buildTag(targetRegexList) + "$");
-                            } finally {
-                                if (hbase != null) {
-                                    hbase.closeConnection();
-                                }
-                            }
+                            hbase = hbaseConnection(jobCfg);
+
+                            // add stats
+                            HashBasedTable<String, String, Value> stats = loadStatsRows(hbase, jobCfg, stepInTable, statsList);
+                            addStatsToConfig(stats, config);    // only req if zero transforming
+
+                            // identify target column
+                            diffColumn = idTargetColumn(stats, buildTag(targetRegexList) + "$");
 
                             if (diffColumn.isPresent()) {
                                 // update config with lag info for arima
@@ -160,9 +145,9 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
                                 jobCfg.setProperty(CFG_TRANSFORM_IN_TABLE, stepInTable);
                                 jobCfg.setProperty(CFG_TRANSFORM_OUT_TABLE, stepOutTable);
 
-                                resultCode = TransformDriver.of(logger)
-                                        .setAddStats(zeroTransform) // add stats if zero transforming
-                                        .runJob(config, jobCfg);
+                                resultCode = runDriver(TransformDriver.of(logger)
+                                        .setAddStats(zeroTransform), // add stats if zero transforming
+                                        config, jobCfg);
                             } else {
                                 resultCode = STATUS_FAIL;
                                 logger.error("Unable to identify target column for lagging");
@@ -189,20 +174,13 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
                         Optional<String> arimaColumn;
 
                         // create output table if necessary
-                        try {
-                            hbase = createTable(jobCfg, stepOutTable);
+                        hbase = createTable(jobCfg, stepOutTable, stepInTable);
 
-                            // load stats
-                            HashBasedTable<String, String, Value> stats = loadStats(hbase, jobCfg, stepInTable,
-                                    STATS_ROW_MARK_REGEX, statsList);
+                        // load stats
+                        HashBasedTable<String, String, Value> stats = loadStatsRows(hbase, jobCfg, stepInTable, statsList);
 
-                            // identify target column
-                            arimaColumn = idTargetColumn(stats, buildTag(targetRegexList)+"$");
-                        } finally {
-                            if (hbase != null) {
-                                hbase.closeConnection();
-                            }
-                        }
+                        // identify target column
+                        arimaColumn = idTargetColumn(stats, buildTag(targetRegexList)+"$");
 
                         if (arimaColumn.isPresent()) {
                             // update config with lag info for arima
@@ -211,13 +189,12 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
 
                             Job job = initJob(config, jobCfg, "ARIMA");
 
-                            TableMapReduceUtil.initTableMapperJob(
+                            initSeriesMapperJob(
                                     stepInTable,           // input table
                                     initScan(jobCfg),     // Scan instance to control CF and attribute selection
-                                    CKTSMapper.class,     // mapper class
-                                    CompositeKey.class,   // mapper output key
-                                    TimeSeriesData.class, // mapper output value
-                                    job);
+                                    job, jobCfg);
+
+                            boolean sliced = initTimeSlicing(job, jobCfg, stepInTable, getWarmUpReadings(jobCfg));
 
                             TableMapReduceUtil.initTableReducerJob(
                                     stepOutTable,   // output table
@@ -225,6 +202,9 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
                                     job);
 
                             resultCode = startJob(job, jobCfg);
+                            if ((resultCode == STATUS_SUCCESS) && sliced) {
+                                mergeSlicePartials(jobCfg, stepOutTable, ModelMetrics::new);
+                            }
                         } else {
                             resultCode = STATUS_FAIL;
                             logger.error("Unable to identify target column for arima");
@@ -240,6 +220,19 @@ public class ArimaDriver extends AbstractDriver implements IDriver {
         return resultCode;
     }
 
+    /**
+     * Get the number of readings required to warm up the ARIMA windows; p readings fill the value window, while the
+     * errors for MA terms are recursive, so q additional readings are only an approximation when MA terms are used
+     * @param jobCfg    Job configuration
+     * @return
+     */
+    private static int getWarmUpReadings(JobConfig jobCfg) {
+        int p = jobCfg.getProperty(CFG_ARIMA_P, "").split(",").length;
+        String maTerms = jobCfg.getProperty(CFG_ARIMA_Q, "");
+        int q = (maTerms.isEmpty() || maTerms.equalsIgnoreCase("none")) ? 0 : maTerms.split(",").length;
+        return p + q;
+    }
+
     private Optional<String> idTargetColumn(HashBasedTable<String, String, Value> stats, String regex) {
         AtomicReference<Optional<String>> name = new AtomicReference<>(Optional.empty());
         // identify target column
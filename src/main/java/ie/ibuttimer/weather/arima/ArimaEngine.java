@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.arima;
+
+import ie.ibuttimer.weather.common.ErrorTracker;
+import ie.ibuttimer.weather.common.ISeriesEngine;
+import ie.ibuttimer.weather.common.ISeriesOutput;
+import ie.ibuttimer.weather.common.ModelMetrics;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
+import org.apache.hadoop.hbase.client.Put;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Engine to perform ARIMA on a series
+ */
+public class ArimaEngine implements ISeriesEngine {
+
+    private final List<Term> arTerms;     // auto-regressive terms, i.e. those applied to past values
+    private final List<Term> maTerms;     // moving average terms, i.e. those applied to past errors
+    private final double constant;
+    private final String modelParams;
+    private final ISeriesOutput output;
+    private final StorageEncoding encoding;
+
+    private final RowKeyCodec rowKeys;
+
+    private Deque<Double> valueWindow;
+    private Deque<Double> errorWindow;
+
+    private ErrorTracker errorTracker;
+
+    private String name;
+    private int slice;
+    private long count;
+    private long samples;
+
+    /**
+     * Constructor
+     * @param arTerms       Auto-regressive terms
+     * @param maTerms       Moving average terms
+     * @param constant      Constant term
+     * @param modelParams   Model parameters description
+     * @param output        Output
+     */
+    public ArimaEngine(List<Term> arTerms, List<Term> maTerms, double constant, String modelParams,
+                       ISeriesOutput output) {
+        this.arTerms = arTerms;
+        this.maTerms = maTerms;
+        this.constant = constant;
+        this.modelParams = modelParams;
+        this.output = output;
+        this.encoding = output.getEncoding();
+        this.rowKeys = new RowKeyCodec(output.getSaltBuckets());
+    }
+
+    @Override
+    public void start(String name, int slice) {
+        this.name = name;
+        this.slice = slice;
+        this.count = 0;
+        this.samples = 0;
+
+        valueWindow = new ArrayDeque<>();
+        errorWindow = new ArrayDeque<>();
+        errorTracker = new ErrorTracker();
+    }
+
+    @Override
+    public void addReading(long timestamp, double value, boolean halo) {
+
+        // halo is only required to fill the windows
+        if (!halo) {
+            ++samples;
+        }
+
+        if (count >= 1) {  // enough values to start predicting?
+
+            // YUCK not very efficient but quick and dirty
+            Double[] valueArray = makeArray(valueWindow, arTerms.size());
+            Double[] errorArray = makeArray(errorWindow, maTerms.size());
+
+            // count - 1 so predictions start once have one previous
+            long applyCount = count - 1;
+            double prediction = constant +
+                    arTerms.stream().mapToDouble(ar -> ar.apply(valueArray, applyCount)).sum();
+            double errors = maTerms.stream().mapToDouble(ar -> ar.apply(errorArray, applyCount)).sum();
+            // using convention ma coefficients are subtracted
+            prediction -= errors;
+
+            double error = value - prediction;
+            if (!halo) {
+                errorTracker.addError(value, error);
+            }
+            if (maTerms.size() > 0) {
+                makeSpace(errorWindow, errorArray.length);
+                errorWindow.addFirst(error);
+            }
+
+            makeSpace(valueWindow, valueArray.length);
+
+            if (!halo) {
+                Put put = new Put(rowKeys.encodeRowKey(timestamp))
+                        .addColumn(FAMILY_BYTES, ACTUAL, encoding.encode(value))
+                        .addColumn(FAMILY_BYTES, PREDICTION, encoding.encode(prediction))
+                        .addColumn(FAMILY_BYTES, ERROR, encoding.encode(error))
+                        .addColumn(FAMILY_BYTES, SQ_ERROR, encoding.encode(Math.pow(error, 2)));
+
+                output.write(put);
+            }
+        }
+
+        valueWindow.addFirst(value);
+
+        ++count;
+    }
+
+    @Override
+    public void finish() {
+        output.writeStats(slice, name, ModelMetrics.of(errorTracker,
+                arTerms.size() + maTerms.size() + (constant == 0 ? 0 : 1), samples, modelParams));
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer sb = new StringBuffer("arTerms=");
+        arTerms.forEach(a -> {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(a.coefficient);
+        });
+        sb.append(",maTerms=");
+        maTerms.forEach(a -> {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(a.coefficient);
+        });
+        return getClass().getSimpleName() + "@" + Integer.toHexString(this.hashCode()) +
+                "{" +
+                "constant=" + constant +
+                "," + sb.toString() +
+                '}';
+    }
+
+    private void makeSpace(Deque<Double> deque, int max) {
+        int count = deque.size();
+        if ((count > 0) && (count == max)) {
+            deque.removeLast();
+        }
+    }
+
+    private Double[] makeArray(Deque<Double> deque, int size) {
+        Double[] array = deque.toArray(new Double[size]);
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == null) {
+                array[i] = 0.0;
+            }
+        }
+        return array;
+    }
+
+
+    static class Term {
+        double coefficient;
+        int index;
+        String tag;
+
+        public Term(double coefficient, int index) {
+            this.coefficient = coefficient;
+            this.index = index;
+            this.tag = "";
+        }
+
+        double apply(Double[] values, long count) {
+            double val = 0.0;
+            if (count >= index) {
+                val = values[index] * coefficient;
+            }
+            return val;
+        }
+
+        @Override
+        public String toString() {
+            return "Term{" +
+                    "coefficient=" + coefficient +
+                    ", index=" + index +
+                    ", tag='" + tag + '\'' +
+                    '}';
+        }
+    }
+}
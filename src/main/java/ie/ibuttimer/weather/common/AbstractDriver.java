@@ -24,14 +24,31 @@ package ie.ibuttimer.weather.common;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
+import ie.ibuttimer.weather.hbase.BulkLoader;
+import ie.ibuttimer.weather.hbase.ColumnRegistry;
 import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.SnapshotInput;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.hbase.StorageLayout;
 import ie.ibuttimer.weather.misc.*;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CompareOperator;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hbase.thirdparty.com.google.common.collect.Maps;
 import org.apache.hbase.thirdparty.org.apache.commons.collections4.list.TreeList;
@@ -40,19 +57,25 @@ import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static ie.ibuttimer.weather.Constants.*;
-import static ie.ibuttimer.weather.misc.Utils.expandPath;
+import static ie.ibuttimer.weather.misc.Utils.*;
 
 public abstract class AbstractDriver implements IDriver {
 
     protected AppLogger logger;
 
+    private SnapshotInput snapshotInput;    // snapshot input of the job being initialised, or null if reading table
+
     protected AbstractDriver(AppLogger logger) {
         this.logger = logger;
     }
@@ -70,8 +93,381 @@ public abstract class AbstractDriver implements IDriver {
         return job;
     }
 
+    /**
+     * Initialise the mapper for a job, and add the column dictionary resolved from the column list to the job.
+     * If snapshot input is configured, the mapper reads from a snapshot of the input table.
+     * @param table             Input table
+     * @param scan              Scan instance to control CF and attribute selection
+     * @param mapper            Mapper class
+     * @param outputKeyClass    Mapper output key class
+     * @param outputValueClass  Mapper output value class
+     * @param job               Job
+     * @param jobCfg            Job configuration
+     * @throws IOException
+     */
+    protected void initTableMapperJob(String table, Scan scan, Class<? extends TableMapper<?, ?>> mapper,
+                                      Class<?> outputKeyClass, Class<?> outputValueClass,
+                                      Job job, JobConfig jobCfg) throws IOException {
+
+        Hbase hbase = hbaseConnection(jobCfg);
+
+        int saltBuckets = hbase.getSaltBuckets(table);
+        if (saltBuckets > 0) {
+            scan = Hbase.saltScan(scan, saltBuckets);   // read the scan range from each salt bucket
+        }
+        StorageLayout layout = hbase.getLayout(table);
+        if (layout.isBlock()) {
+            // read the blocks containing the scan range, mappers skip the readings outside it
+            Pair<Long, Long> range = Hbase.readingRange(scan);
+            job.getConfiguration().setLong(INPUT_RANGE_START, range.getLeft());
+            job.getConfiguration().setLong(INPUT_RANGE_STOP, range.getRight());
+            scan = Hbase.blockScan(scan, layout);
+        }
+
+        releaseSnapshotInput();     // the previous job did not start, e.g. a config error
+        if (isSnapshotInput(mapper, jobCfg)) {
+            snapshotInput = SnapshotInput.of(hbase, table, scan, mapper, outputKeyClass, outputValueClass, job,
+                    jobCfg.getProperty(CFG_SNAPSHOT_RESTORE_DIR, DFLT_SNAPSHOT_RESTORE_DIR));
+            if (jobCfg.isVerbose()) {
+                logger.logger().info("Reading " + table + " from snapshot " + snapshotInput.getSnapshot());
+            }
+        } else {
+            TableMapReduceUtil.initTableMapperJob(table, scan, mapper, outputKeyClass, outputValueClass, job);
+        }
+
+        job.getConfiguration().set(INPUT_ENCODING, hbase.getEncoding(table).getId());
+        job.getConfiguration().set(INPUT_LAYOUT, layout.getId());
+
+        // station vectors are laid out from the dictionary so it must be complete, otherwise the dictionary is resolved
+        // from a sample and mappers register the columns missed by the sample as they find them
+        int sampleSize = CKTSVectorMapper.class.isAssignableFrom(mapper) ? 0 :
+                jobCfg.getProperty(CFG_COLUMN_DICTIONARY_SAMPLE, DFLT_COLUMN_DICTIONARY_SAMPLE);
+        ColumnDictionary dictionary;
+        if (snapshotInput != null) {
+            // resolve from the snapshot so the dictionary matches the rows the mappers read
+            dictionary = ColumnDictionary.resolve(snapshotInput, scan, jobCfg.getProperty(CFG_COLUMN_LIST, ""),
+                    sampleSize);
+        } else {
+            try (Table input = hbase.getConnection().getTable(TableName.valueOf(table))) {
+                dictionary = ColumnDictionary.resolve(input::getScanner, scan,
+                        jobCfg.getProperty(CFG_COLUMN_LIST, ""), sampleSize);
+            }
+        }
+        if (jobCfg.isVerbose()) {
+            logger.logger().info("Column dictionary: " + dictionary);
+        }
+        dictionary.addToConfig(job.getConfiguration());
+        if (!dictionary.isComplete()) {
+            String registry = jobCfg.getProperty(CFG_COLUMN_REGISTRY_TABLE, DFLT_COLUMN_REGISTRY_TABLE);
+            ColumnRegistry.createTable(hbase, registry);
+            ColumnRegistry.addToConfig(job.getConfiguration(), registry, UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * Remove the snapshot read by the job being initialised, if any
+     */
+    protected void releaseSnapshotInput() {
+        if (snapshotInput != null) {
+            snapshotInput.cleanup(logger);
+            snapshotInput = null;
+        }
+    }
+
+    /**
+     * Release the resources of a job which was initialised but not started, e.g. due to an error
+     */
+    @Override
+    public void cleanup() {
+        releaseSnapshotInput();
+    }
+
+    /**
+     * Run another driver's job as a step of this driver's job, and clean up after it
+     * @param driver    Driver to run
+     * @param config    Configuration
+     * @param jobCfg    Job configuration
+     * @return  Result code
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws InterruptedException
+     */
+    protected int runDriver(IDriver driver, Configuration config, JobConfig jobCfg)
+            throws IOException, ClassNotFoundException, InterruptedException {
+        try {
+            return driver.runJob(config, jobCfg);
+        } finally {
+            driver.cleanup();
+        }
+    }
+
+    /**
+     * Check if a job's mapper is to read from a snapshot of the input table
+     * @param mapper    Mapper class
+     * @param jobCfg    Job configuration
+     * @return  true if reading from a snapshot
+     */
+    protected boolean isSnapshotInput(Class<? extends TableMapper<?, ?>> mapper, JobConfig jobCfg) {
+        boolean snapshot = jobCfg.getProperty(CFG_SNAPSHOT_INPUT, DFLT_SNAPSHOT_INPUT);
+        if (snapshot) {
+            if (SeriesEngineMapper.class.isAssignableFrom(mapper)) {
+                // warm up reads the rows preceding a table split from the live table
+                logger.warn("Map-only mode reads the input table directly, ignoring " + CFG_SNAPSHOT_INPUT);
+                snapshot = false;
+            } else if (!jobCfg.isWait()) {
+                logger.warn("Snapshot input requires waiting for job completion, reading table directly");
+                snapshot = false;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Initialise the time series mapper for a job; the variables of a station are shuffled together if station mode is
+     * configured, otherwise readings are shuffled in blocks if a block size is configured, or individually
+     * @param table     Input table
+     * @param scan      Scan instance to control CF and attribute selection
+     * @param job       Job
+     * @param jobCfg    Job configuration
+     * @throws IOException
+     */
+    protected void initSeriesMapperJob(String table, Scan scan, Job job, JobConfig jobCfg) throws IOException {
+        initSeriesMapperJob(table, scan, true, job, jobCfg);
+    }
+
+    /**
+     * Initialise the time series mapper for a job
+     * @param table         Input table
+     * @param scan          Scan instance to control CF and attribute selection
+     * @param allowStations Job reducer supports station mode
+     * @param job           Job
+     * @param jobCfg        Job configuration
+     * @throws IOException
+     */
+    protected void initSeriesMapperJob(String table, Scan scan, boolean allowStations, Job job, JobConfig jobCfg)
+            throws IOException {
+
+        boolean stationMode = allowStations && jobCfg.getProperty(CFG_STATION_MODE, DFLT_STATION_MODE);
+        int blockSize = jobCfg.getProperty(CFG_BLOCK_SIZE, DFLT_BLOCK_SIZE);
+
+        if (stationMode) {
+            if (blockSize > 1) {
+                logger.warn("Station mode enabled, ignoring " + CFG_BLOCK_SIZE);
+            }
+            initTableMapperJob(table, scan,
+                    CKTSVectorMapper.class, // mapper class
+                    CompositeKey.class,     // mapper output key
+                    TimeSeriesVector.class, // mapper output value
+                    job, jobCfg);
+        } else if (blockSize > 1) {
+            initTableMapperJob(table, scan,
+                    CKTSBlockMapper.class,  // mapper class
+                    CompositeKey.class,     // mapper output key
+                    TimeSeriesBlock.class,  // mapper output value
+                    job, jobCfg);
+        } else {
+            initTableMapperJob(table, scan,
+                    CKTSMapper.class,       // mapper class
+                    CompositeKey.class,     // mapper output key
+                    TimeSeriesData.class,   // mapper output value
+                    job, jobCfg);
+        }
+        // reducers take the mode from the job configuration
+        job.getConfiguration().setBoolean(CFG_STATION_MODE, stationMode);
+    }
+
+    /**
+     * Initialise a map-only job, in which the mapper writes directly to the output table
+     * @param table     Input table
+     * @param scan      Scan instance to control CF and attribute selection
+     * @param mapper    Mapper class
+     * @param outTable  Output table
+     * @param job       Job
+     * @param jobCfg    Job configuration
+     * @throws IOException
+     */
+    protected void initMapOnlyJob(String table, Scan scan, Class<? extends SeriesEngineMapper> mapper,
+                                  String outTable, Job job, JobConfig jobCfg) throws IOException {
+
+        initTableMapperJob(table, scan, mapper,
+                ImmutableBytesWritable.class,   // mapper output key
+                Mutation.class,                 // mapper output value
+                job, jobCfg);
+
+        TableMapReduceUtil.initTableReducerJob(outTable, null, job);
+        job.setNumReduceTasks(0);
+    }
+
+    /**
+     * Check if map-only execution is configured; map-only engines require rows in time order, so salted input tables
+     * are not supported, nor are block input tables, as engines warm up from the rows preceding a split
+     * @param jobCfg        Job configuration
+     * @param inputTable    Input table
+     * @return
+     * @throws IOException
+     */
+    protected boolean isMapOnly(JobConfig jobCfg, String inputTable) throws IOException {
+        boolean mapOnly = jobCfg.getProperty(CFG_MAP_ONLY, DFLT_MAP_ONLY);
+        if (mapOnly && (hbaseConnection(jobCfg).getSaltBuckets(inputTable) > 0)) {
+            logger.warn(inputTable + " has salted row keys, ignoring " + CFG_MAP_ONLY);
+            mapOnly = false;
+        }
+        if (mapOnly && hbaseConnection(jobCfg).getLayout(inputTable).isBlock()) {
+            logger.warn(inputTable + " has block storage layout, ignoring " + CFG_MAP_ONLY);
+            mapOnly = false;
+        }
+        return mapOnly;
+    }
+
+    /**
+     * Initialise time sliced partitioning for a job, if configured.
+     * The time range to slice is taken from the start and stop date/times if configured, otherwise from the first and
+     * last rows of the input table.
+     * @param job           Job
+     * @param jobCfg        Job configuration
+     * @param table         Input table
+     * @param haloReadings  Number of readings required to warm up the calculations at the start of a slice
+     * @return  true if series are time sliced
+     * @throws IOException
+     */
+    protected boolean initTimeSlicing(Job job, JobConfig jobCfg, String table, int haloReadings) throws IOException {
+
+        int slices = jobCfg.getProperty(CFG_TIME_SLICES, DFLT_TIME_SLICES);
+        boolean sliced = (slices > 1);
+        if (sliced) {
+            long interval = jobCfg.getProperty(CFG_READING_INTERVAL, DFLT_READING_INTERVAL);
+            Pair<LocalDateTime, LocalDateTime> range = getTimeRange(jobCfg, table);
+            LocalDateTime start = range.getLeft();
+            LocalDateTime stop = range.getRight();
+
+            if (start.isAfter(LocalDateTime.MIN) && stop.isAfter(start)) {
+                int halo = jobCfg.getProperty(CFG_SLICE_HALO, haloReadings);
+                TimeSlicer slicer = TimeSlicer.of(start.toEpochSecond(ZoneOffset.UTC), stop.toEpochSecond(ZoneOffset.UTC),
+                        slices, halo * interval);
+                slicer.addToConfig(job.getConfiguration());
+                logger.logger().info("Time slicing: " + slicer);
+            } else {
+                sliced = false;
+                logger.warn("Unable to determine time range of " + table + ", time slicing disabled");
+            }
+        }
+        return sliced;
+    }
+
+    /**
+     * Get the time range to process; the start and stop date/times if configured, otherwise the first and last rows of
+     * the input table
+     * @param jobCfg    Job configuration
+     * @param table     Input table
+     * @return  Start and exclusive stop, either of which is LocalDateTime.MIN if it could not be determined
+     * @throws IOException
+     */
+    protected Pair<LocalDateTime, LocalDateTime> getTimeRange(JobConfig jobCfg, String table) throws IOException {
+
+        long interval = jobCfg.getProperty(CFG_READING_INTERVAL, DFLT_READING_INTERVAL);
+        LocalDateTime start = jobCfg.getProperty(CFG_START_DATETIME, LocalDateTime.MIN, DATETIME_FMT);
+        LocalDateTime stop = jobCfg.getProperty(CFG_STOP_DATETIME, LocalDateTime.MIN, DATETIME_FMT);
+
+        if (!start.isAfter(LocalDateTime.MIN) || !stop.isAfter(LocalDateTime.MIN)) {
+            Hbase hbase = hbaseConnection(jobCfg);
+            StorageLayout layout = hbase.getLayout(table);
+            if (!start.isAfter(LocalDateTime.MIN)) {
+                Optional<byte[]> row = hbase.boundaryReadingRow(table, false);
+                if (row.isPresent()) {
+                    if (layout.isBlock()) {
+                        start = LocalDateTime.ofEpochSecond(layout.blockStart(row.get()), 0, ZoneOffset.UTC);
+                    } else {
+                        start = getRowDateTime(new String(row.get()));
+                    }
+                }
+            }
+            if (!stop.isAfter(LocalDateTime.MIN)) {
+                Optional<byte[]> row = hbase.boundaryReadingRow(table, true);
+                if (row.isPresent()) {
+                    // stop is exclusive; the end of the last block for block tables
+                    if (layout.isBlock()) {
+                        stop = LocalDateTime.ofEpochSecond(layout.blockStop(layout.blockStart(row.get())), 0,
+                                ZoneOffset.UTC);
+                    } else {
+                        stop = getRowDateTime(new String(row.get())).plusSeconds(interval);
+                    }
+                }
+            }
+        }
+        return Pair.of(start, stop);
+    }
+
+    /**
+     * Get the keys to pre-split an output table at, so writes are spread across regions from the start of a job.
+     * Depending on the configured pre-split mode, the time range of the input is divided into the configured number of
+     * regions, or the region boundaries of the input table are copied.
+     * @param hbase         Hbase
+     * @param jobCfg        Job configuration
+     * @param inputTable    Input table
+     * @return  Split keys, empty if not pre-splitting
+     * @throws IOException
+     */
+    protected byte[][] getSplitKeys(Hbase hbase, JobConfig jobCfg, String inputTable) throws IOException {
+
+        String mode = jobCfg.getProperty(CFG_PRESPLIT, DFLT_PRESPLIT);
+        List<byte[]> splits = Lists.newArrayList();
+        if (mode.equalsIgnoreCase(PRESPLIT_TIME)) {
+            int regions = jobCfg.getProperty(CFG_PRESPLIT_REGIONS, DFLT_PRESPLIT_REGIONS);
+            long interval = jobCfg.getProperty(CFG_READING_INTERVAL, DFLT_READING_INTERVAL);
+            Pair<LocalDateTime, LocalDateTime> range = getTimeRange(jobCfg, inputTable);
+            LocalDateTime start = range.getLeft();
+            LocalDateTime stop = range.getRight();
+
+            if (start.isAfter(LocalDateTime.MIN) && stop.isAfter(start)) {
+                long startTs = start.toEpochSecond(ZoneOffset.UTC);
+                long span = stop.toEpochSecond(ZoneOffset.UTC) - startTs;
+                long lastTs = startTs;
+                for (int i = 1; i < regions; ++i) {
+                    // split on a reading
+                    long timestamp = startTs + ((((span * i) / regions) / interval) * interval);
+                    if (timestamp > lastTs) {
+                        splits.add(RowKeyCodec.rowKey(timestamp));
+                        lastTs = timestamp;
+                    }
+                }
+            } else {
+                logger.warn("Unable to determine time range of " + inputTable + ", output table not pre-split");
+            }
+        } else if (mode.equalsIgnoreCase(PRESPLIT_INPUT)) {
+            splits.addAll(Arrays.asList(hbase.getSplitKeys(inputTable)));
+        } else if (!mode.equalsIgnoreCase(PRESPLIT_NONE)) {
+            logger.warn("Unknown " + CFG_PRESPLIT + " mode '" + mode + "', output table not pre-split");
+        }
+        return splits.toArray(new byte[splits.size()][]);
+    }
+
+    /**
+     * Merge the partial stats generated by the slices of time sliced series into stats rows
+     * @param jobCfg    Job configuration
+     * @param table     Output table
+     * @param factory   Partial stats factory
+     * @param <T>       Type of partial stats
+     * @throws IOException
+     */
+    protected <T extends IPartialStats<T>> void mergeSlicePartials(JobConfig jobCfg, String table, Supplier<T> factory)
+            throws IOException {
+        Hbase hbase = hbaseConnection(jobCfg);
+        int count = SlicePartials.merge(hbase, table, factory);
+        if (jobCfg.isVerbose()) {
+            logger.logger().info(String.format("Merged slice stats for %d rows in %s", count, table));
+        }
+    }
+
     public enum EnableStartStop{ IGNORE, PROCESS }
 
+    /**
+     * Initialise a scan.
+     * When processing the start & stop date times, the scan is bounded to the reading rows, so the stats rows of derived
+     * tables, which sort ahead of the reading rows, are skipped by the region servers rather than returned to mappers.
+     * @param jobCfg            Job configuration
+     * @param enableStartStop   Process the start & stop date times
+     * @return
+     */
     public static Scan initScan(JobConfig jobCfg, EnableStartStop enableStartStop) {
 
         LocalDateTime start = jobCfg.getProperty(CFG_START_DATETIME, LocalDateTime.MIN, DATETIME_FMT);
@@ -80,18 +476,65 @@ public abstract class AbstractDriver implements IDriver {
                 .setCaching(jobCfg.getProperty(CFG_SCAN_CACHING, DFLT_SCAN_CACHING))
                 .setCacheBlocks(false);  // don't set to true for MR jobs
         if (enableStartStop == EnableStartStop.PROCESS) {
-            if (start.isAfter(LocalDateTime.MIN)) {
-                scan.withStartRow(Utils.getRowName(start.toEpochSecond(ZoneOffset.UTC)).getBytes());
-            }
-            if (end.isAfter(LocalDateTime.MIN)) {
-                scan.withStopRow(Utils.getRowName(end.toEpochSecond(ZoneOffset.UTC)).getBytes());
-            }
+            byte[] prefix = ROWNAME_PREFIX.getBytes();
+            scan.withStartRow(start.isAfter(LocalDateTime.MIN) ?
+                    RowKeyCodec.rowKey(start.toEpochSecond(ZoneOffset.UTC)) : prefix);
+            scan.withStopRow(end.isAfter(LocalDateTime.MIN) ?
+                    RowKeyCodec.rowKey(end.toEpochSecond(ZoneOffset.UTC)) : Hbase.nextPrefix(prefix));
         }
         return scan;
     }
 
+    /**
+     * Initialise the scan for the input of a job, restricted to the required columns
+     * @param jobCfg    Job configuration
+     * @return
+     */
     public static Scan initScan(JobConfig jobCfg) {
-        return initScan(jobCfg, EnableStartStop.PROCESS);
+        return projectColumns(initScan(jobCfg, EnableStartStop.PROCESS), jobCfg.getProperty(CFG_COLUMN_LIST, ""));
+    }
+
+    /**
+     * Restrict a scan to the columns in a column list, plus the date column, so unrequired columns are not returned by
+     * the region servers. Literal column names are added as columns, while regexs require a qualifier filter.
+     * @param scan          Scan
+     * @param columnList    Column list; literal names or regexs
+     * @return
+     */
+    public static Scan projectColumns(Scan scan, String columnList) {
+        List<String> literals = Lists.newArrayList();
+        List<String> regexs = Lists.newArrayList();
+        Arrays.stream(columnList.split(CFG_COLUMN_LIST_SEP))
+                .map(String::trim)
+                .filter(c -> !StringUtils.isEmpty(c))
+                .forEach(c -> {
+                    if (ColumnDictionary.isLiteral(c)) {
+                        literals.add(c);
+                    } else {
+                        regexs.add(c);
+                    }
+                });
+
+        if (regexs.isEmpty()) {
+            if (!literals.isEmpty()) {
+                literals.forEach(c -> scan.addColumn(FAMILY_BYTES, c.getBytes()));
+                scan.addColumn(FAMILY_BYTES, DATE_ATTR);
+            }
+        } else {
+            // literals are word characters only, so may be used as regexs
+            List<String> alternatives = Lists.newArrayList(DATE_COL);
+            alternatives.addAll(literals);
+            alternatives.addAll(regexs);
+
+            Filter filter = new QualifierFilter(CompareOperator.EQUAL,
+                    new RegexStringComparator("^(?:" + String.join("|", alternatives) + ")$"));
+            if (scan.getFilter() != null) {
+                filter = new FilterList(scan.getFilter(), filter);
+            }
+            scan.addFamily(FAMILY_BYTES)
+                    .setFilter(filter);
+        }
+        return scan;
     }
 
     protected Pair<Integer, String> getRequiredStringProperty(JobConfig jobCfg, String name) {
@@ -117,19 +560,30 @@ public abstract class AbstractDriver implements IDriver {
         return Pair.of(resultCode.get(), map);
     }
 
-    public static HashBasedTable<String, String, Value> loadStats(Hbase hbase, JobConfig jobCfg, String tableName,
-                                                                  String matchRegex, List<String> stats) throws IOException {
+    /**
+     * Load the stats rows of a table. Stats row keys start with the stats row mark, which sorts ahead of the reading
+     * row keys, so a scan bounded to the mark prefix reads only the stats rows rather than the whole table.
+     * @param hbase     Hbase
+     * @param jobCfg    Job configuration
+     * @param tableName Name of table
+     * @param stats     Stats columns to read
+     * @return  Table of values <row, column, value>
+     * @throws IOException
+     */
+    public static HashBasedTable<String, String, Value> loadStatsRows(Hbase hbase, JobConfig jobCfg, String tableName,
+                                                                      List<String> stats) throws IOException {
         Map<String, DataTypes> columns = Maps.newHashMap();
-        stats.forEach(x -> columns.put(x, DataTypes.STRING));   // table values are stored as strings
-        return hbase.read(tableName, initScan(jobCfg, EnableStartStop.IGNORE), columns, matchRegex);
-    }
-
-    public HashBasedTable<String, String, Value> loadStats(Hbase hbase, JobConfig jobCfg, String tableName, List<String> stats) throws IOException {
-        return loadStats(hbase, jobCfg, tableName, "", stats);
+        Scan scan = initScan(jobCfg, EnableStartStop.IGNORE)
+                .setRowPrefixFilter(STATS_ROW_MARK.getBytes());
+        stats.forEach(x -> {
+            columns.put(x, StorageEncoding.getColumnType(x));
+            scan.addColumn(FAMILY_BYTES, Bytes.toBytes(x));
+        });
+        return hbase.read(tableName, scan, columns);
     }
 
     public void addStatsToConfig(Hbase hbase, JobConfig jobCfg, String tableName, Configuration config, List<String> stats) throws IOException {
-        HashBasedTable<String, String, Value> statsTable = loadStats(hbase, jobCfg, tableName, stats);
+        HashBasedTable<String, String, Value> statsTable = loadStatsRows(hbase, jobCfg, tableName, stats);
         addStatsToConfig(statsTable, config);
     }
 
@@ -162,6 +616,11 @@ public abstract class AbstractDriver implements IDriver {
     }
 
 
+    /**
+     * Get the hbase instance for a job; the instance and its connection are shared by all the jobs of this process
+     * @param jobCfg    Job configuration
+     * @return  Hbase instance
+     */
     protected static Hbase hbaseConnection(JobConfig jobCfg) {
         return Hbase.of(jobCfg.getProperty(CFG_HBASE_RESOURCE, DFLT_HBASE_RESOURCE));
     }
@@ -169,25 +628,95 @@ public abstract class AbstractDriver implements IDriver {
     protected Hbase createTable(JobConfig jobCfg, String tableName) throws IOException {
         Hbase hbase = hbaseConnection(jobCfg);
         if (!hbase.tableExists(TableName.valueOf(tableName))) {
-            hbase.createTable(tableName, FAMILY);
+            hbase.createTable(tableName, FAMILY, new byte[0][], getStorageEncoding(jobCfg));
         }
         return hbase;
     }
 
-    protected Hbase deleteTables(JobConfig jobCfg, List<String> tableNames) throws IOException {
+    /**
+     * Get the configured storage encoding of values for created tables
+     * @param jobCfg    Job configuration
+     * @return  Encoding
+     */
+    protected static StorageEncoding getStorageEncoding(JobConfig jobCfg) {
+        return StorageEncoding.of(jobCfg.getProperty(CFG_STORAGE_ENCODING, DFLT_STORAGE_ENCODING));
+    }
 
+    /**
+     * Create a table for the readings derived from an input table, with reading row keys salted as configured. Salted
+     * tables are pre-split at the salt bucket boundaries, otherwise tables are pre-split as configured.
+     * @param jobCfg        Job configuration
+     * @param tableName     Name of table to create
+     * @param inputTable    Input table
+     * @return  Hbase
+     * @throws IOException
+     */
+    protected Hbase createTable(JobConfig jobCfg, String tableName, String inputTable) throws IOException {
         Hbase hbase = hbaseConnection(jobCfg);
-        // remove existing tables
-        hbase.getTables().stream()
-                .map(t -> new String(t.getTableName().getName()))
-                .filter(tableNames::contains)
-                .forEach(t -> {
-                    try {
-                        hbase.removeTable(t);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                });
+        if (!hbase.tableExists(TableName.valueOf(tableName))) {
+            int saltBuckets = jobCfg.getProperty(CFG_SALT_BUCKETS, DFLT_SALT_BUCKETS);
+            byte[][] splitKeys;
+            if (saltBuckets > 0) {
+                splitKeys = new byte[saltBuckets - 1][];
+                for (int bucket = 1; bucket < saltBuckets; ++bucket) {
+                    splitKeys[bucket - 1] = RowKeyCodec.salt(ROWNAME_PREFIX.getBytes(), bucket);
+                }
+            } else {
+                splitKeys = getSplitKeys(hbase, jobCfg, inputTable);
+            }
+            if (jobCfg.isVerbose() && (splitKeys.length > 0)) {
+                logger.logger().info(String.format("Pre-splitting %s into %d regions", tableName, splitKeys.length + 1));
+            }
+            hbase.createTable(tableName, FAMILY, splitKeys, getStorageEncoding(jobCfg), saltBuckets);
+        }
+        return hbase;
+    }
+
+    protected Hbase resetTables(JobConfig jobCfg, List<String> tableNames) throws IOException {
+        return resetTables(jobCfg, tableNames, StorageLayout.ROW);
+    }
+
+    /**
+     * Reset existing tables before a job rewrites them. In truncate mode, tables with the configured storage encoding
+     * and salt, and the specified storage layout, are truncated, preserving their descriptors and region splits, and the
+     * remaining tables are removed so they are recreated with the configured layout. Otherwise, all existing tables are
+     * removed. The admin operations for the tables are run concurrently.
+     * @param jobCfg        Job configuration
+     * @param tableNames    Names of tables to reset
+     * @param layout        Storage layout the tables are to have
+     * @return  Hbase
+     * @throws IOException
+     */
+    protected Hbase resetTables(JobConfig jobCfg, List<String> tableNames, StorageLayout layout) throws IOException {
+
+        Hbase hbase = hbaseConnection(jobCfg);
+        String mode = jobCfg.getProperty(CFG_TABLE_RESET, DFLT_TABLE_RESET);
+        boolean truncate = TABLE_RESET_TRUNCATE.equals(mode);
+        if (!truncate && !TABLE_RESET_DROP.equals(mode)) {
+            logger.warn(String.format("Unknown %s '%s', using '%s'", CFG_TABLE_RESET, mode, TABLE_RESET_DROP));
+        }
+
+        StorageEncoding encoding = getStorageEncoding(jobCfg);
+        int saltBuckets = jobCfg.getProperty(CFG_SALT_BUCKETS, DFLT_SALT_BUCKETS);
+        List<String> toTruncate = new ArrayList<>();
+        List<String> toRemove = new ArrayList<>();
+        for (String table : hbase.getTables().stream()
+                                .map(t -> t.getTableName().getNameAsString())
+                                .filter(tableNames::contains)
+                                .collect(Collectors.toList())) {
+            if (truncate && (hbase.getEncoding(table) == encoding) && (hbase.getSaltBuckets(table) == saltBuckets) &&
+                    (hbase.getLayout(table) == layout)) {
+                toTruncate.add(table);
+            } else {
+                toRemove.add(table);
+            }
+        }
+
+        if (jobCfg.isVerbose()) {
+            logger.logger().info(String.format("Truncating %s, removing %s", toTruncate, toRemove));
+        }
+        hbase.truncateTables(toTruncate);
+        hbase.removeTables(toRemove);
         return hbase;
     }
 
@@ -199,8 +728,41 @@ public abstract class AbstractDriver implements IDriver {
         job.setGroupingComparatorClass(CompositeKeyGrouping.class); // comparator that controls which keys are grouped together for a single call to Reducer
         job.setSortComparatorClass(CompositeKeyComparator.class);   // comparator that controls how the keys are sorted before they are passed to the Reducer
 
+        String outputTable = job.getConfiguration().get(TableOutputFormat.OUTPUT_TABLE);
+        if (!StringUtils.isEmpty(outputTable)) {
+            // values written as per the encoding of the output table
+            job.getConfiguration().set(OUTPUT_ENCODING, hbaseConnection(jobCfg).getEncoding(outputTable).getId());
+            // reading row keys salted as per the output table
+            job.getConfiguration().setInt(OUTPUT_SALT_BUCKETS, hbaseConnection(jobCfg).getSaltBuckets(outputTable));
+            job.getConfiguration().set(OUTPUT_LAYOUT, hbaseConnection(jobCfg).getLayout(outputTable).getId());
+        }
+
+        BulkLoader bulkLoader = null;
+        if (isBulkLoad(job, jobCfg)) {
+            if (jobCfg.isWait()) {
+                if (job.getConfiguration().getBoolean(CFG_DIRECT_WRITE, DFLT_DIRECT_WRITE)) {
+                    logger.warn("Bulk load enabled, ignoring " + CFG_DIRECT_WRITE);
+                    job.getConfiguration().setBoolean(CFG_DIRECT_WRITE, false);
+                }
+                bulkLoader = BulkLoader.of(job, jobCfg.getProperty(CFG_BULK_LOAD_DIR, DFLT_BULK_LOAD_DIR));
+            } else {
+                logger.warn("Bulk load requires waiting for job completion, writing to table directly");
+            }
+        }
+
         if (jobCfg.isWait()) {
-            resultCode = job.waitForCompletion(jobCfg.isVerbose()) ? STATUS_SUCCESS : STATUS_FAIL;
+            SnapshotInput snapshot = snapshotInput;
+            snapshotInput = null;
+            try {
+                resultCode = job.waitForCompletion(jobCfg.isVerbose()) ? STATUS_SUCCESS : STATUS_FAIL;
+            } finally {
+                if (snapshot != null) {
+                    snapshot.cleanup(logger);
+                }
+            }
+            if ((resultCode == STATUS_SUCCESS) && (bulkLoader != null)) {
+                resultCode = bulkLoader.load(hbaseConnection(jobCfg), jobCfg.isVerbose(), logger) ? STATUS_SUCCESS : STATUS_FAIL;
+            }
         } else {
             job.submit();
             resultCode = STATUS_RUNNING;
@@ -209,6 +771,24 @@ public abstract class AbstractDriver implements IDriver {
     }
 
 
+    /**
+     * Check if the table output of a job is to be bulk loaded, i.e. the job's name is in the bulk load list
+     * @param job       Job
+     * @param jobCfg    Job configuration
+     * @return  true if bulk loading
+     * @throws ClassNotFoundException
+     */
+    protected boolean isBulkLoad(Job job, JobConfig jobCfg) throws ClassNotFoundException {
+        boolean bulkLoad = false;
+        if (TableOutputFormat.class.equals(job.getOutputFormatClass())) {
+            String jobs = jobCfg.getProperty(CFG_BULK_LOAD, DFLT_BULK_LOAD);
+            bulkLoad = Arrays.stream(jobs.split(","))
+                    .map(String::trim)
+                    .anyMatch(name -> name.equalsIgnoreCase(BULK_LOAD_ALL) || name.equalsIgnoreCase(job.getJobName()));
+        }
+        return bulkLoad;
+    }
+
     public static void saveDriverResults(JobConfig jobCfg, String table, List<String> statColumns, String outPath, AppLogger logger) throws IOException {
 
         outPath = expandPath(outPath);
@@ -218,9 +798,7 @@ public abstract class AbstractDriver implements IDriver {
             hbase = hbaseConnection(jobCfg);
 
             // add stats
-            // TODO not very efficient, scans whole table, since hbase stores lexicographically stats mark is at the top, so once no longer found ok to stop
-            HashBasedTable<String, String, Value> stats = loadStats(hbase, jobCfg, table,
-                    STATS_ROW_MARK_REGEX, statColumns);
+            HashBasedTable<String, String, Value> stats = loadStatsRows(hbase, jobCfg, table, statColumns);
 
             if (!StringUtils.isEmpty(outPath)) {
                 List<String> columns = stats.columnKeySet().stream()
@@ -259,10 +837,6 @@ public abstract class AbstractDriver implements IDriver {
             }
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            if (hbase != null) {
-                hbase.closeConnection();
-            }
         }
     }
 
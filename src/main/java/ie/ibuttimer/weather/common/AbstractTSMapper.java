@@ -0,0 +1,392 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import ie.ibuttimer.weather.hbase.BlockCodec;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.hbase.StorageLayout;
+import ie.ibuttimer.weather.hbase.TypeMap;
+import ie.ibuttimer.weather.misc.AppLogger;
+import ie.ibuttimer.weather.misc.DataTypes;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static ie.ibuttimer.weather.Constants.*;
+import static ie.ibuttimer.weather.hbase.TypeMap.STRING_MAPPER;
+
+/**
+ * Base mapper to decode the time series readings of the required columns of hbase rows.
+ * Readings are output in timestamp order within a split, a row of readings at a time, for both the row and block
+ * storage layouts, see {@link StorageLayout}.
+ * @param <VALUEOUT>    Type of mapper output value
+ */
+public abstract class AbstractTSMapper<VALUEOUT> extends TableMapper<CompositeKey, VALUEOUT> {
+
+    private static final AppLogger logger = AppLogger.of(Logger.getLogger("AbstractTSMapper"));
+
+    private Pattern[] columnPatterns;
+
+    private QualifierCache<Column> columns;
+
+    protected ColumnDictionary dictionary;
+
+    private TypeMap typeMap;
+
+    private StorageEncoding encoding;   // input table encoding, binary encodings override the type map
+
+    private StorageLayout layout;       // input table layout
+
+    private long rangeStart;            // reading time range of block input
+    private long rangeStop;
+
+    private float reading;              // reading decoded by decode()
+
+    private BlockCodec.Decoder[] decoders = new BlockCodec.Decoder[0];     // decoders of the blocks of a row
+    private Column[] blockColumns = new Column[0];
+
+    /*
+        hbase(main):004:0> get "weather_info", "r-2020063015"
+        COLUMN                               CELL
+         cf:date                             timestamp=1596534897470, value=2020-06-30 15:00:00
+         cf:dewpt_3904                       timestamp=1596534897470, value=13.7
+         cf:ind_rain_3904                    timestamp=1596534897470, value=0
+         cf:ind_temp_3904                    timestamp=1596534897470, value=0
+         cf:ind_wetb_3904                    timestamp=1596534897470, value=0
+         cf:msl_3904                         timestamp=1596534897470, value=1002.3
+         cf:rain_3904                        timestamp=1596534897470, value=0.0
+         cf:rhum_3904                        timestamp=1596534897470, value=86
+         cf:temp_3904                        timestamp=1596534897470, value=16.0
+         cf:vappr_3904                       timestamp=1596534897470, value=15.7
+         cf:wetb_3904                        timestamp=1596534897470, value=14.7
+     */
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+
+        Configuration conf = context.getConfiguration();
+
+        String param = conf.get(CFG_COLUMN_LIST);
+        columnPatterns = Arrays.stream(param.split(CFG_COLUMN_LIST_SEP))
+                .map(Pattern::compile)
+                .toArray(Pattern[]::new);
+        columns = new QualifierCache<>();
+
+        dictionary = ColumnDictionary.of(conf);
+
+        param = conf.get(CFG_KEY_TYPE_MAP, "");
+        if (StringUtils.isEmpty(param)) {
+            typeMap = STRING_MAPPER;
+        } else {
+            typeMap = TypeMap.of(param);
+        }
+        encoding = StorageEncoding.of(conf, INPUT_ENCODING);
+        layout = StorageLayout.of(conf, INPUT_LAYOUT);
+        rangeStart = conf.getLong(INPUT_RANGE_START, Long.MIN_VALUE);
+        rangeStop = conf.getLong(INPUT_RANGE_STOP, Long.MAX_VALUE);
+    }
+
+    @Override
+    protected void map(ImmutableBytesWritable key, Result value, Context context) throws IOException, InterruptedException {
+
+        if (layout.isBlock()) {
+            mapBlocks(value, context);
+            return;
+        }
+
+        // job scans are bounded to the reading rows, so no stats rows
+        long timestamp = getTimestamp(value);
+
+        for (Cell cell : value.rawCells()) {
+            if (!CellUtil.matchingFamily(cell, FAMILY_BYTES)) {
+                continue;
+            }
+            Column column = getColumn(cell);
+            if ((column.id != ColumnDictionary.UNKNOWN_ID) && decode(column, cell, timestamp)) {
+                // output it as column id, timestamp, float value
+                output(context, column.id, timestamp, reading);
+            }
+        }
+
+        endRow(context, timestamp);
+    }
+
+    /**
+     * Get the timestamp of a row of readings, from its date column if present, otherwise from its row key
+     * @param value Row of readings
+     * @return  Timestamp
+     */
+    protected long getTimestamp(Result value) {
+        long timestamp;
+        Cell dateCell = value.getColumnLatestCell(FAMILY_BYTES, DATE_ATTR);
+        if (dateCell != null) {
+            timestamp = RowKeyCodec.decodeDateTime(dateCell.getValueArray(), dateCell.getValueOffset(),
+                    dateCell.getValueLength());
+        } else {
+            // get date time from row name
+            timestamp = RowKeyCodec.decodeRowKey(value.getRow());
+        }
+        return timestamp;
+    }
+
+    /**
+     * Get the reading of a required column from a row of readings
+     * @param value     Row of readings
+     * @param qualifier Column qualifier
+     * @return  Reading, or empty if the row has no valid reading of the column
+     * @throws IOException
+     */
+    protected Optional<Float> getReading(Result value, byte[] qualifier) throws IOException {
+        Optional<Float> result = Optional.empty();
+        Cell cell = value.getColumnLatestCell(FAMILY_BYTES, qualifier);
+        if (cell != null) {
+            Column column = getColumn(cell);
+            if ((column.id != ColumnDictionary.UNKNOWN_ID) && decode(column, cell, getTimestamp(value))) {
+                result = Optional.of(reading);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decode the value of a cell of a required column
+     * @param column    Column
+     * @param cell      Cell
+     * @param timestamp Reading timestamp
+     * @return  true if the cell holds a valid reading, which is set in <code>reading</code>
+     */
+    private boolean decode(Column column, Cell cell, long timestamp) {
+        /* hbase stores everything as bytes, so need to decode the bytes appropriately,
+         * i.e. do bytes represent a float value or the string representation of a float value */
+        if (column.type == null) {
+            logger.warn(String.format("Could not decode value for column %s using map %s",
+                    column.name, typeMap));
+            return false;
+        }
+        byte[] buffer = cell.getValueArray();
+        int offset = cell.getValueOffset();
+        int length = cell.getValueLength();
+
+        boolean valid = true;
+        float val = 0;
+        switch (column.type) {
+            case STRING:
+                if (length == 0) {
+                    logger.warn(String.format("Empty string for column %s at %s", column.name,
+                            RowKeyCodec.dateTime(timestamp)));
+                    valid = false;
+                } else {
+                    try {
+                        val = (float) TypeMap.decodeDouble(column.type, buffer, offset, length);
+                    } catch (NumberFormatException nfe) {
+                        logger.logger().warn("Unable to read value", nfe);
+                    }
+                }
+                break;
+            case FLOAT:
+            case DOUBLE:
+                try {
+                    val = (float) TypeMap.decodeDouble(column.type, buffer, offset, length);
+                } catch (NumberFormatException nfe) {
+                    logger.warn(String.format("Invalid value for column %s at %s: %s", column.name,
+                            RowKeyCodec.dateTime(timestamp), nfe.getMessage()));
+                    valid = false;
+                }
+                break;
+            default:
+                logger.warn("Ignoring column value of type " + column.type);
+                valid = false;
+                break;
+        }
+        reading = val;
+        return valid;
+    }
+
+    /**
+     * Decode the readings of the required columns from the blocks of a block row. The blocks are decoded lazily and in
+     * step, so the readings are output in timestamp order, a row of readings at a time, as for rows of readings.
+     * @param value     Block row
+     * @param context   Mapper context
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void mapBlocks(Result value, Context context) throws IOException, InterruptedException {
+
+        int count = 0;  // number of blocks with readings pending
+        for (Cell cell : value.rawCells()) {
+            if (!CellUtil.matchingFamily(cell, FAMILY_BYTES)) {
+                continue;
+            }
+            Column column = getColumn(cell);
+            if (column.id == ColumnDictionary.UNKNOWN_ID) {
+                continue;   // not a required column
+            }
+
+            if (count == decoders.length) {
+                decoders = Arrays.copyOf(decoders, Math.max(count * 2, 8));
+                blockColumns = Arrays.copyOf(blockColumns, decoders.length);
+                for (int i = count; i < decoders.length; ++i) {
+                    decoders[i] = new BlockCodec.Decoder();
+                }
+            }
+            decoders[count].reset(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+            if (advance(decoders[count])) {
+                blockColumns[count] = column;
+                ++count;
+            }
+        }
+
+        while (count > 0) {
+            long timestamp = Long.MAX_VALUE;
+            for (int i = 0; i < count; ++i) {
+                timestamp = Math.min(timestamp, decoders[i].getTimestamp());
+            }
+            for (int i = 0; i < count; ) {
+                BlockCodec.Decoder decoder = decoders[i];
+                if (decoder.getTimestamp() == timestamp) {
+                    // output it as column id, timestamp, float value
+                    output(context, blockColumns[i].id, timestamp, decoder.getValue());
+                    if (!advance(decoder)) {
+                        // block exhausted, replace with last pending block
+                        --count;
+                        decoders[i] = decoders[count];
+                        decoders[count] = decoder;
+                        blockColumns[i] = blockColumns[count];
+                        continue;
+                    }
+                }
+                ++i;
+            }
+
+            endRow(context, timestamp);
+        }
+    }
+
+    /**
+     * Advance a block decoder to its next reading in the reading time range
+     * @param decoder   Decoder
+     * @return  true if positioned on a reading, false if no further readings in range
+     */
+    private boolean advance(BlockCodec.Decoder decoder) {
+        boolean next;
+        do {
+            next = decoder.next();
+        } while (next && (decoder.getTimestamp() < rangeStart));
+        return next && (decoder.getTimestamp() < rangeStop);
+    }
+
+    /**
+     * Get the column of a cell
+     * @param cell  Cell
+     * @return  Column
+     * @throws IOException
+     */
+    private Column getColumn(Cell cell) throws IOException {
+        Column column = columns.get(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+        if (column == null) {
+            column = resolveColumn(cell);
+        }
+        return column;
+    }
+
+    /**
+     * Resolve whether a cell's column is required, and cache the decision
+     * @param cell  Cell
+     * @return  Column
+     */
+    private Column resolveColumn(Cell cell) throws IOException {
+        String name = Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+
+        Column column;
+        if (!name.equals(DATE_COL) && Arrays.stream(columnPatterns).anyMatch(p -> p.matcher(name).matches())) {
+            int id = dictionary.getId(name);
+            if (id == ColumnDictionary.UNKNOWN_ID) {
+                id = dictionary.register(name);     // missed by the sample the dictionary was resolved from
+            }
+            DataTypes type = encoding.isBinary() ? encoding.getType() : typeMap.getType(name).orElse(null);
+            column = new Column(name, id, type);
+        } else {
+            column = new Column(name, ColumnDictionary.UNKNOWN_ID, null);
+        }
+        columns.put(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength(), column);
+        return column;
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        dictionary.close();
+
+        super.cleanup(context);
+    }
+
+    /**
+     * Output a reading
+     * @param context   Mapper context
+     * @param id        Column id
+     * @param timestamp Reading timestamp
+     * @param value     Reading value
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected abstract void output(Context context, int id, long timestamp, float value)
+            throws IOException, InterruptedException;
+
+    /**
+     * All readings of a row have been output
+     * @param context   Mapper context
+     * @param timestamp Row timestamp
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected void endRow(Context context, long timestamp) throws IOException, InterruptedException {
+        // no-op by default
+    }
+
+    /**
+     * Resolved column of a qualifier
+     */
+    private static class Column {
+        final String name;
+        final int id;           // column id, or UNKNOWN_ID if not required
+        final DataTypes type;   // value type, or null if no type mapping
+
+        Column(String name, int id, DataTypes type) {
+            this.name = name;
+            this.id = id;
+            this.type = type;
+        }
+    }
+}
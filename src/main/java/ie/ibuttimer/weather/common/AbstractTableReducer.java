@@ -22,37 +22,122 @@
 
 package ie.ibuttimer.weather.common;
 
+import ie.ibuttimer.weather.hbase.BufferedTableWriter;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
 import org.apache.hadoop.hbase.mapreduce.TableReducer;
-import org.apache.hadoop.hbase.util.Bytes;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
 
 import static ie.ibuttimer.weather.Constants.*;
-import static ie.ibuttimer.weather.hbase.Hbase.storeValueAsString;
 
 public abstract class AbstractTableReducer<KEYIN, VALUEIN, KEYOUT> extends TableReducer<KEYIN, VALUEIN, KEYOUT> {
 
-    protected void write(Context context, Put put) {
-        try {
-            context.write(null, put);
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+    protected TimeSlicer slicer;
+
+    protected ISeriesOutput output;
+
+    protected SeriesReducer seriesReducer;
+
+    protected StorageEncoding encoding;
+
+    protected int saltBuckets;
+
+    private BufferedTableWriter writer;     // direct writer, or null if writing via the output format
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+
+        Configuration conf = context.getConfiguration();
+        if (conf.getBoolean(CFG_DIRECT_WRITE, DFLT_DIRECT_WRITE)) {
+            writer = BufferedTableWriter.of(conf, conf.get(TableOutputFormat.OUTPUT_TABLE),
+                    conf.getLong(CFG_WRITE_BUFFER_SIZE, DFLT_WRITE_BUFFER_SIZE),
+                    conf.getLong(CFG_WRITE_FLUSH_PERIOD, DFLT_WRITE_FLUSH_PERIOD));
+        }
+
+        encoding = StorageEncoding.of(conf, OUTPUT_ENCODING);
+        saltBuckets = conf.getInt(OUTPUT_SALT_BUCKETS, 0);
+        slicer = TimeSlicer.of(conf);
+        output = new ISeriesOutput() {
+            @Override
+            public void write(Put put) {
+                AbstractTableReducer.this.write(context, put);
+            }
+
+            @Override
+            public void writeStats(int slice, String tag, IPartialStats<?> stats) {
+                Put put;
+                if (slicer.isSliced()) {
+                    put = SlicePartials.partialPut(tag, slice, stats);
+                } else {
+                    put = stats.toPut(tag, encoding);
+                }
+                write(put);
+            }
+
+            @Override
+            public StorageEncoding getEncoding() {
+                return encoding;
+            }
+
+            @Override
+            public int getSaltBuckets() {
+                return saltBuckets;
+            }
+        };
+    }
+
+    /**
+     * Set the factory for the engines to process the readings of the series
+     * @param conf      Job configuration
+     * @param factory   Engine factory
+     */
+    protected void setEngineFactory(Configuration conf, Supplier<ISeriesEngine> factory) {
+        seriesReducer = SeriesReducer.of(conf, factory);
+    }
+
+    /**
+     * Process the readings of a series, or of the variables of a station in station mode
+     * @param key       Key
+     * @param values    Readings
+     */
+    protected void reduceSeries(CompositeKey key, Iterable<TimeSeriesData> values) {
+        seriesReducer.reduce(key, values);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        super.cleanup(context);
+
+        if (writer != null) {
+            writer.close();     // flushes remaining puts, and fails task if any write failed
+            writer = null;
         }
     }
 
-    protected void addModelMetrics(Context context, String key, ErrorTracker errorTracker, int numParams, int numSamples, String params) {
-        double mse = errorTracker.getMSE();
-        double maape = errorTracker.getMAAPE();
-        Put put = new Put(Bytes.toBytes(STATS_ROW_MARK + key))
-                .addColumn(FAMILY_BYTES, MSE.getBytes(), storeValueAsString(mse))
-                .addColumn(FAMILY_BYTES, MAAPE.getBytes(), storeValueAsString(maape))
-                .addColumn(FAMILY_BYTES, AIC_MSE.getBytes(), storeValueAsString(errorTracker.getAIC(numParams, mse)))
-                .addColumn(FAMILY_BYTES, AIC_MAAPE.getBytes(), storeValueAsString(errorTracker.getAIC(numParams, maape)))
-                .addColumn(FAMILY_BYTES, BIC_MSE.getBytes(), storeValueAsString(errorTracker.getBIC(numSamples, numParams, mse)))
-                .addColumn(FAMILY_BYTES, BIC_MAAPE.getBytes(), storeValueAsString(errorTracker.getBIC(numSamples, numParams, maape)))
-                .addColumn(FAMILY_BYTES, PARAMS.getBytes(), storeValueAsString(params));
-
-        write(context, put);
+    /**
+     * Write a put to the output table, either directly or via the output format
+     * @param context   Context
+     * @param put       Put to write
+     * @throws UncheckedIOException if the write failed
+     */
+    protected void write(Context context, Put put) {
+        try {
+            if (writer != null) {
+                writer.write(put);
+            } else {
+                context.write(null, put);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted writing output", e);
+        }
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Mapper to output blocks of consecutive readings as CompositeKey(column id, slice, block start timestamp),
+ * TimeSeriesBlock(float values)
+ *
+ * A block is closed when there is a gap in the readings, the readings are routed to a different set of time slices,
+ * or the block reaches the configured block size. Readings arrive in row order, i.e. ascending timestamp, within a
+ * split, so blocks from different splits do not overlap.
+ */
+public class CKTSBlockMapper extends AbstractTSMapper<TimeSeriesBlock> {
+
+    private final CompositeKey reducerKey = new CompositeKey();
+
+    private TimeSlicer slicer;
+
+    private long interval;
+
+    private int blockSize;
+
+    private Map<Integer, OpenBlock> blocks;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+
+        slicer = TimeSlicer.of(context.getConfiguration());
+        interval = context.getConfiguration().getLong(CFG_READING_INTERVAL, DFLT_READING_INTERVAL);
+        blockSize = Math.max(context.getConfiguration().getInt(CFG_BLOCK_SIZE, DFLT_BLOCK_SIZE), 1);
+        blocks = new HashMap<>();
+    }
+
+    @Override
+    protected void output(Context context, int id, long timestamp, float value)
+            throws IOException, InterruptedException {
+
+        int firstSlice = slicer.getSlice(timestamp);
+        int lastSlice = slicer.getLastHaloSlice(timestamp);
+
+        OpenBlock open = blocks.get(id);
+        if (open == null) {
+            open = new OpenBlock(interval, blockSize);
+            blocks.put(id, open);
+        } else if (open.block.getCount() > 0 &&
+                ((timestamp != open.lastTimestamp + interval) ||
+                        (firstSlice != open.firstSlice) || (lastSlice != open.lastSlice) ||
+                        (open.block.getCount() == blockSize))) {
+            flush(context, id, open);
+        }
+
+        if (open.block.getCount() == 0) {
+            open.start = timestamp;
+            open.firstSlice = firstSlice;
+            open.lastSlice = lastSlice;
+        }
+        open.block.add(value);
+        open.lastTimestamp = timestamp;
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (Map.Entry<Integer, OpenBlock> entry : blocks.entrySet()) {
+            if (entry.getValue().block.getCount() > 0) {
+                flush(context, entry.getKey().intValue(), entry.getValue());
+            }
+        }
+        blocks.clear();
+
+        super.cleanup(context);
+    }
+
+    private void flush(Context context, int id, OpenBlock open) throws IOException, InterruptedException {
+        for (int slice = open.firstSlice; slice <= open.lastSlice; ++slice) {
+            // set output key to column id, slice, block start timestamp
+            reducerKey.set(id, slice, open.start);
+
+            context.write(reducerKey, open.block);
+        }
+        open.block.clear();
+    }
+
+    private static class OpenBlock {
+        TimeSeriesBlock block;
+        long start;
+        long lastTimestamp;
+        int firstSlice;
+        int lastSlice;
+
+        OpenBlock(long interval, int capacity) {
+            this.block = new TimeSeriesBlock(interval, capacity);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Mapper to output the readings of a row as CompositeKey(station id, slice, timestamp), TimeSeriesVector(float values)
+ * per station, see {@link StationDictionary}.
+ *
+ * If time sliced partitioning is enabled, readings in the halo of following slices are also output for those slices.
+ */
+public class CKTSVectorMapper extends AbstractTSMapper<TimeSeriesVector> {
+
+    private final CompositeKey reducerKey = new CompositeKey();
+
+    private TimeSlicer slicer;
+
+    private StationDictionary stations;
+
+    private TimeSeriesVector[] vectors;
+
+    private BitSet pending;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+
+        slicer = TimeSlicer.of(context.getConfiguration());
+        stations = StationDictionary.of(dictionary);
+        vectors = new TimeSeriesVector[stations.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = new TimeSeriesVector(stations.getColumns(i).length);
+        }
+        pending = new BitSet(stations.size());
+    }
+
+    @Override
+    protected void output(Context context, int id, long timestamp, float value) {
+        int station = stations.getStationId(id);
+        vectors[station].set(stations.getIndex(id), value);
+        pending.set(station);
+    }
+
+    @Override
+    protected void endRow(Context context, long timestamp) throws IOException, InterruptedException {
+        int firstSlice = slicer.getSlice(timestamp);
+        int lastSlice = slicer.getLastHaloSlice(timestamp);
+
+        for (int station = pending.nextSetBit(0); station >= 0; station = pending.nextSetBit(station + 1)) {
+            for (int slice = firstSlice; slice <= lastSlice; ++slice) {
+                // set output key to station id, slice, timestamp
+                reducerKey.set(station, slice, timestamp);
+
+                context.write(reducerKey, vectors[station]);
+            }
+            vectors[station].clear();
+        }
+        pending.clear();
+    }
+}
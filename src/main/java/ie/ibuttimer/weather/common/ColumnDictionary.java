@@ -0,0 +1,321 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import ie.ibuttimer.weather.hbase.ColumnRegistry;
+import ie.ibuttimer.weather.hbase.ScanSource;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Dictionary of column names to integer ids.
+ *
+ * The dictionary is resolved by the driver from the configured column list, and shipped to the tasks via the job
+ * configuration, so that map output keys may carry a small integer id rather than the column name.
+ * Ids are assigned in column name order, so keys sort in the same order as the names would.
+ *
+ * Column list regexs are resolved from a sample of the input rows, so columns which only appear part way through the
+ * input may be missing from the dictionary. Mappers give such columns an extension id derived from the column name,
+ * and record it in the job's {@link ColumnRegistry}, from which reducers look up the names of extension ids.
+ */
+public class ColumnDictionary implements Closeable {
+
+    public static final int UNKNOWN_ID = -1;
+
+    /** Flag of extension ids; dictionary ids are assigned from 0 so never have it set */
+    public static final int EXTENSION_ID = 1 << 30;
+
+    private static final Pattern LITERAL = Pattern.compile("^\\w+$");
+
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+    private final boolean complete;
+    private final Configuration conf;
+
+    private final Map<String, Integer> extensionIds;
+    private final Map<Integer, String> extensionNames;
+    private ColumnRegistry registry;
+
+    private ColumnDictionary(Collection<String> names, boolean complete, Configuration conf) {
+        this.names = names.stream()
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        this.ids = Maps.newHashMap();
+        for (int i = 0; i < this.names.size(); i++) {
+            this.ids.put(this.names.get(i), i);
+        }
+        this.complete = complete;
+        this.conf = conf;
+        this.extensionIds = Maps.newHashMap();
+        this.extensionNames = Maps.newHashMap();
+        this.registry = null;
+    }
+
+    public static ColumnDictionary of(Collection<String> names) {
+        return new ColumnDictionary(names, true, null);
+    }
+
+    /**
+     * Create a dictionary from the job configuration
+     * @param conf  Configuration
+     * @return
+     */
+    public static ColumnDictionary of(Configuration conf) {
+        String param = conf.get(CFG_COLUMN_DICTIONARY, "");
+        List<String> names;
+        if (StringUtils.isEmpty(param)) {
+            names = Collections.emptyList();
+        } else {
+            names = Arrays.asList(param.split(CFG_COLUMN_LIST_SEP));
+        }
+        return new ColumnDictionary(names, !ColumnRegistry.isConfigured(conf), conf);
+    }
+
+    /**
+     * Add this dictionary to the job configuration
+     * @param conf  Configuration
+     */
+    public void addToConfig(Configuration conf) {
+        conf.set(CFG_COLUMN_DICTIONARY, String.join(CFG_COLUMN_LIST_SEP, names));
+    }
+
+    /**
+     * Get the id of a column
+     * @param name  Column name
+     * @return  id or UNKNOWN_ID if not in dictionary
+     */
+    public int getId(String name) {
+        return ids.getOrDefault(name, UNKNOWN_ID);
+    }
+
+    /**
+     * Register a column which is not in the dictionary, giving it an extension id derived from its name, which is
+     * recorded in the job's column registry
+     * @param name  Column name
+     * @return  Extension id
+     * @throws IOException
+     * @throws IllegalStateException if the job has no column registry, or another column has the same id
+     */
+    public int register(String name) throws IOException {
+        Integer id = extensionIds.get(name);
+        if (id == null) {
+            if (complete) {
+                throw new IllegalStateException(String.format(
+                        "Column %s not in column dictionary, add it to '%s'", name, CFG_COLUMN_LIST));
+            }
+            id = EXTENSION_ID | (Hashing.murmur3_32().hashString(name, StandardCharsets.UTF_8).asInt()
+                                    & (EXTENSION_ID - 1));
+            if (registry == null) {
+                registry = ColumnRegistry.of(conf);
+            }
+            String registered = registry.register(id, name);
+            if (!registered.equals(name)) {
+                throw new IllegalStateException(String.format(
+                        "Columns %s and %s have the same extension id, add them to '%s'",
+                        name, registered, CFG_COLUMN_LIST));
+            }
+            extensionIds.put(name, id);
+            extensionNames.put(id, name);
+        }
+        return id;
+    }
+
+    /**
+     * Get the name of a column
+     * @param id    Column id
+     * @return
+     * @throws IllegalStateException if the id is not in the dictionary or the job's column registry
+     */
+    public String getName(int id) {
+        if ((id & EXTENSION_ID) == 0) {
+            return names.get(id);
+        }
+        String name = extensionNames.get(id);
+        if ((name == null) && !complete) {
+            // all mappers have registered their columns by the time reducers see their ids
+            try (ColumnRegistry columnRegistry = ColumnRegistry.of(conf)) {
+                columnRegistry.load().forEach((k, v) -> {
+                    extensionNames.put(k, v);
+                    extensionIds.put(v, k);
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            name = extensionNames.get(id);
+        }
+        if (name == null) {
+            throw new IllegalStateException("Column id " + id + " not in column dictionary");
+        }
+        return name;
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Get the number of columns in the dictionary, excluding registered columns
+     * @return
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Check if the dictionary includes all the required columns of the input, i.e. was not resolved from a sample
+     * @return
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Close the job's column registry, if opened
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (registry != null) {
+            registry.close();
+            registry = null;
+        }
+    }
+
+    /**
+     * Check if a column list entry is a literal column name rather than a regex
+     * @param entry Column list entry
+     * @return
+     */
+    public static boolean isLiteral(String entry) {
+        return LITERAL.matcher(entry).matches();
+    }
+
+    /**
+     * Resolve the column list against a table.
+     * Literal column names are added directly, while regexs are resolved from the qualifiers of the rows at the start
+     * and end of the scan range, or of all the rows in the range if no sample size is given. If the source does not
+     * support reversed scans, twice the sample size is read from the start of the range instead. The scans are
+     * key-only and filtered to the matching qualifiers, so no values are returned.
+     * @param source        Source of the rows to resolve against, i.e. the rows the job reads
+     * @param scan          Job scan
+     * @param columnList    Column list; literal names or regexs
+     * @param sampleSize    Number of rows to sample at each end of the scan range, or 0 for all rows
+     * @return
+     * @throws IOException
+     */
+    public static ColumnDictionary resolve(ScanSource source, Scan scan, String columnList,
+                                           int sampleSize) throws IOException {
+        List<String> names = Lists.newArrayList();
+        List<String> regexs = Lists.newArrayList();
+        Arrays.stream(columnList.split(CFG_COLUMN_LIST_SEP))
+                .map(String::trim)
+                .filter(s -> !StringUtils.isEmpty(s))
+                .forEach(s -> {
+                    if (isLiteral(s)) {
+                        names.add(s);
+                    } else {
+                        regexs.add(s);
+                    }
+                });
+
+        boolean complete = true;
+        if (regexs.size() > 0) {
+            Set<String> found = new TreeSet<>();
+            String regex = "^(?:" + String.join("|", regexs) + ")$";
+
+            FilterList filter = new FilterList(
+                    new QualifierFilter(CompareOperator.EQUAL, new RegexStringComparator(regex)),
+                    new KeyOnlyFilter());
+            if (scan.getFilter() != null) {
+                filter.addFilter(scan.getFilter());   // keep the job scan's filter, e.g. salt bucket row ranges
+            }
+            List<Scan> samples = Lists.newArrayList(new Scan(scan).setFilter(filter));
+            if (sampleSize > 0) {
+                complete = false;
+                if (source.isReversible()) {
+                    samples.get(0).setLimit(sampleSize);
+                    samples.add(new Scan(scan)
+                            .withStartRow(scan.getStopRow(), false)
+                            .withStopRow(scan.getStartRow(), true)
+                            .setReversed(true)
+                            .setLimit(sampleSize)
+                            .setFilter(filter));
+                } else {
+                    samples.get(0).setLimit(sampleSize * 2);
+                }
+            }
+
+            for (Scan sample : samples) {
+                // not all sources apply the scan limit, so count the rows
+                int limit = sample.getLimit() > 0 ? sample.getLimit() : Integer.MAX_VALUE;
+                int count = 0;
+                try (ResultScanner scanner = source.getScanner(sample.setCacheBlocks(false))) {
+                    for (Result result = scanner.next(); (result != null) && (count < limit);
+                         result = scanner.next()) {
+                        for (Cell cell : result.rawCells()) {
+                            String qualifier = Bytes.toString(CellUtil.cloneQualifier(cell));
+                            if (!qualifier.equals(DATE_COL)) {
+                                found.add(qualifier);
+                            }
+                        }
+                        ++count;
+                    }
+                }
+            }
+            names.addAll(found);
+        }
+        return new ColumnDictionary(names, complete, null);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+                "names=" + names +
+                '}';
+    }
+}
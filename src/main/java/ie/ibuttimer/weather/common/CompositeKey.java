@@ -1,5 +1,7 @@
 package ie.ibuttimer.weather.common;
 
+import org.apache.hadoop.io.WritableComparator;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -9,10 +11,10 @@ import java.io.IOException;
 /**
  * 
  * CompositeKey: represents a pair of 
- * (String name, long timestamp).
+ * (int id, long timestamp).
  * 
  * 
- * We do a primary grouping pass on the name field to get all of the data of
+ * We do a primary grouping pass on the id field to get all of the data of
  * one type together, and then our "secondary sort" during the shuffle phase
  * uses the timestamp long member to sort the timeseries points so that they
  * arrive at the reducer partitioned and in sorted order.
@@ -23,23 +25,38 @@ import java.io.IOException;
  *
  * 11/08/2020 Ian Buttimer
  * Modifications to use ICompositeKey
+ * Main key is the column id from the job {@link ColumnDictionary} rather than the column name
+ * Time slice of the series, see {@link TimeSlicer}; always 0 unless time sliced partitioning is enabled
+ *
+ * Binary layout, as produced by {@link #write(DataOutput)}:
+ * <pre>
+ *   +---------+-----------+-----------+
+ *   | id (4)  | slice (4) | time (8)  |
+ *   +---------+-----------+-----------+
+ * </pre>
+ * - id:    big-endian two's complement column id, i.e. {@link DataOutput#writeInt(int)}
+ * - slice: big-endian two's complement time slice, i.e. {@link DataOutput#writeInt(int)}
+ * - time:  big-endian two's complement timestamp, i.e. {@link DataOutput#writeLong(long)}
+ *
+ * {@link CompositeKeyComparator} and {@link CompositeKeyGrouping} operate directly on this layout.
  */
-public class CompositeKey implements ICompositeKey<CompositeKey, String, Long> {
-    // natural key is (name)
-    // composite key is a pair (name, timestamp)
-	private String name;
+public class CompositeKey implements ICompositeKey<CompositeKey, Integer, Long> {
+    // natural key is (id)
+    // composite key is a triple (id, slice, timestamp)
+	private int id;
+	private int slice;
 	private long timestamp;
 
-	public CompositeKey(String name, long timestamp) {
-		set(name, timestamp);
+	public CompositeKey(int id, long timestamp) {
+		set(id, timestamp);
 	}
 	
 	public CompositeKey() {
 	}
 
 	@Override
-	public String getMainKey() {
-		return this.name;
+	public Integer getMainKey() {
+		return this.id;
 	}
 
 	@Override
@@ -48,8 +65,8 @@ public class CompositeKey implements ICompositeKey<CompositeKey, String, Long> {
 	}
 
 	@Override
-	public void setMainKey(String mainKey) {
-		this.name = mainKey;
+	public void setMainKey(Integer mainKey) {
+		this.id = mainKey;
 	}
 
 	@Override
@@ -57,46 +74,64 @@ public class CompositeKey implements ICompositeKey<CompositeKey, String, Long> {
 		this.timestamp = subKey;
 	}
 
+	public int getId() {
+		return id;
+	}
+
+	public int getSlice() {
+		return slice;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void set(int id, long timestamp) {
+		set(id, 0, timestamp);
+	}
+
+	public void set(int id, int slice, long timestamp) {
+		this.id = id;
+		this.slice = slice;
+		this.timestamp = timestamp;
+	}
+
 	@Override
 	public void readFields(DataInput in) throws IOException {
-		this.name = in.readUTF();
+		this.id = in.readInt();
+		this.slice = in.readInt();
 		this.timestamp = in.readLong();
 	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
-		out.writeUTF(this.name);
+		out.writeInt(this.id);
+		out.writeInt(this.slice);
 		out.writeLong(this.timestamp);
 	}
 
 	@Override
 	public int compareTo(CompositeKey other) {
 		// 11/08/2020 IB Refactored
-		if (this.name == null) {
-			System.out.println("Name --------");
+		int result = Integer.compare(this.id, other.id);
+		if (result == 0) {
+			result = Integer.compare(this.slice, other.slice);
 		}
-
-		int result = this.name.compareTo(other.name);
 		if (result == 0) {
-			if (this.timestamp != other.timestamp) {
-				result = this.timestamp < other.timestamp ? -1 : 1;
-			}
+			result = Long.compare(this.timestamp, other.timestamp);
 		} 
 		return result;
 	}
 
-//	public static class CompositeKeyComparator extends WritableComparator {
-//		public CompositeKeyComparator() {
-//			super(CompositeKey.class);
-//		}
-//
-//		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
-//			return compareBytes(b1, s1, l1, b2, s2, l2);
-//		}
-//	}
-//
-//	static { // register this comparator
-//		WritableComparator.define(CompositeKey.class, new CompositeKeyComparator());
-//	}
+	/** Size of the id */
+	public static final int ID_SIZE = Integer.BYTES;
+	/** Size of the slice */
+	public static final int SLICE_SIZE = Integer.BYTES;
+	/** Size of the timestamp */
+	public static final int TIMESTAMP_SIZE = Long.BYTES;
+
+	static { // register this comparator
+		WritableComparator.define(CompositeKey.class, new CompositeKeyComparator());
+	}
 
 }
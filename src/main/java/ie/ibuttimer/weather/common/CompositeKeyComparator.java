@@ -3,6 +3,9 @@ package ie.ibuttimer.weather.common;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
+import static ie.ibuttimer.weather.common.CompositeKey.ID_SIZE;
+import static ie.ibuttimer.weather.common.CompositeKey.SLICE_SIZE;
+
 /**
  * CompositeKeyComparator
  *
@@ -13,6 +16,8 @@ import org.apache.hadoop.io.WritableComparator;
  *
  * 18/08/2020 Ian Buttimer
  * Modified to remove redundant code
+ * Added raw comparison of the serialised key, see {@link CompositeKey} for the layout; the id and slice bytes are compared
+ * followed by the timestamp bytes, with the sign bit flipped so negative values order first.
  */
 public class CompositeKeyComparator extends WritableComparator {
 
@@ -20,26 +25,42 @@ public class CompositeKeyComparator extends WritableComparator {
         super(CompositeKey.class, true);
     }
 
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        int result = compareSigned(b1, s1, b2, s2, ID_SIZE);
+        if (result == 0) {
+            result = compareSigned(b1, s1 + ID_SIZE, b2, s2 + ID_SIZE, SLICE_SIZE);
+        }
+        if (result == 0) {
+            int offset = ID_SIZE + SLICE_SIZE;
+            result = compareSigned(b1, s1 + offset, b2, s2 + offset, l1 - offset);
+        }
+        return result;
+    }
+
+    /**
+     * Compare big-endian serialised two's complement values
+     * @param b1        First byte array
+     * @param s1        Start offset of value in first byte array
+     * @param b2        Second byte array
+     * @param s2        Start offset of value in second byte array
+     * @param length    Length of value
+     * @return
+     */
+    public static int compareSigned(byte[] b1, int s1, byte[] b2, int s2, int length) {
+        // flip the sign bit so the unsigned byte comparison orders negative values first
+        int result = Integer.compare((b1[s1] & 0xff) ^ 0x80, (b2[s2] & 0xff) ^ 0x80);
+        if (result == 0) {
+            result = compareBytes(b1, s1 + 1, length - 1, b2, s2 + 1, length - 1);
+        }
+        return result;
+    }
+
     @Override
     public int compare(WritableComparable w1, WritableComparable w2) {
         CompositeKey key1 = (CompositeKey) w1;
         CompositeKey key2 = (CompositeKey) w2;
 
         return key1.compareTo(key2);
-
-//        int comparison = key1.getName().compareTo(key2.getName());
-//        if (comparison == 0) {
-//            // names are equal here
-//            if (key1.getTimestamp() == key2.getTimestamp()) {
-//                return 0;
-//            } else if (key1.getTimestamp() < key2.getTimestamp()) {
-//                return -1;
-//            } else {
-//                return 1;
-//            }
-//        }
-//        else {
-//            return comparison;
-//        }
     }
 }
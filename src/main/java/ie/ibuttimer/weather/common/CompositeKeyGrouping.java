@@ -22,17 +22,19 @@
 
 package ie.ibuttimer.weather.common;
 
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
-import org.apache.hadoop.io.WritableUtils;
 
-import java.io.IOException;
+import static ie.ibuttimer.weather.common.CompositeKey.ID_SIZE;
+import static ie.ibuttimer.weather.common.CompositeKey.SLICE_SIZE;
+import static ie.ibuttimer.weather.common.CompositeKeyComparator.compareSigned;
 
+/**
+ * Grouping comparator for CompositeKey, groups keys by main key (i.e. column id) and time slice.
+ * See {@link CompositeKey} for the serialised layout.
+ */
 public class CompositeKeyGrouping extends WritableComparator {
 
-    private static final Text.Comparator TEXT_COMPARATOR = new Text.Comparator();
-
     public CompositeKeyGrouping() {
         super(CompositeKey.class);
     }
@@ -47,22 +49,27 @@ public class CompositeKeyGrouping extends WritableComparator {
             Publisher: O'Reilly Media, Inc.
             Release Date: April 2015
             ISBN: 9781491901632
-         */
 
-        try {
-            int firstL1 = WritableUtils.decodeVIntSize(b1[s1]) + readVInt(b1, s1);
-            int firstL2 = WritableUtils.decodeVIntSize(b2[s2]) + readVInt(b2, s2);
-            return TEXT_COMPARATOR.compare(b1, s1, firstL1, b2, s2, firstL2);
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
+            Id and slice are serialised by CompositeKey.write() using writeInt(), so compare the id and slice
+            bytes in the same manner as CompositeKeyComparator.
+         */
+        int result = compareSigned(b1, s1, b2, s2, ID_SIZE);
+        if (result == 0) {
+            result = compareSigned(b1, s1 + ID_SIZE, b2, s2 + ID_SIZE, SLICE_SIZE);
         }
+        return result;
     }
 
     @Override
     public int compare(WritableComparable a, WritableComparable b) {
         int result;
         if ((a instanceof CompositeKey) && (b instanceof CompositeKey)) {
-            result = ((CompositeKey) a).getMainKey().compareTo(((CompositeKey) b).getMainKey());
+            CompositeKey key1 = (CompositeKey) a;
+            CompositeKey key2 = (CompositeKey) b;
+            result = Integer.compare(key1.getId(), key2.getId());
+            if (result == 0) {
+                result = Integer.compare(key1.getSlice(), key2.getSlice());
+            }
         } else {
             result = super.compare(a, b);
         }
@@ -24,10 +24,15 @@ package ie.ibuttimer.weather.common;
 
 import org.apache.hadoop.mapreduce.Partitioner;
 
-public class CompositeKeyPartitioner extends Partitioner<CompositeKey, TimeSeriesData> {
+/**
+ * Partitioner for CompositeKey, partitions on the column id and time slice
+ * @param <V>   Type of map output value
+ */
+public class CompositeKeyPartitioner<V> extends Partitioner<CompositeKey, V> {
 
     @Override
-    public int getPartition(CompositeKey compositeKey, TimeSeriesData timeSeriesData, int numPartitions) {
-        return Math.abs(compositeKey.getMainKey().hashCode() % numPartitions);
+    public int getPartition(CompositeKey compositeKey, V value, int numPartitions) {
+        // consecutive slices of a series go to consecutive partitions
+        return Math.abs((compositeKey.getId() + compositeKey.getSlice()) % numPartitions);
     }
 }
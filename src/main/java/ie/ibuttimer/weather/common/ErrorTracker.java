@@ -22,6 +22,12 @@
 
 package ie.ibuttimer.weather.common;
 
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Class to track error values
  *
@@ -31,7 +37,7 @@ package ie.ibuttimer.weather.common;
  * ISBN: 9781789348279
  * https://learning.oreilly.com/library/view/hands-on-unsupervised-learning/9781789348279/966e5cc9-d8bd-401c-afdd-d1a88c2ae896.xhtml
  */
-public class ErrorTracker {
+public class ErrorTracker implements Writable {
 
     private double sqErrorSum;
     private double absErrorSum;
@@ -57,6 +63,16 @@ public class ErrorTracker {
         ++count;
     }
 
+    /**
+     * Merge another tracker into this tracker
+     * @param other     Tracker to merge
+     */
+    public void merge(ErrorTracker other) {
+        sqErrorSum += other.sqErrorSum;
+        absErrorSum += other.absErrorSum;
+        count += other.count;
+    }
+
     /**
      * Calculate MSE
      * @return
@@ -101,4 +117,18 @@ public class ErrorTracker {
     public long getCount() {
         return count;
     }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(sqErrorSum);
+        out.writeDouble(absErrorSum);
+        out.writeLong(count);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        sqErrorSum = in.readDouble();
+        absErrorSum = in.readDouble();
+        count = in.readLong();
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Interface for statistics which may be calculated in parts and merged, e.g. for the slices of a time sliced series
+ * @param <T>   Type of object
+ */
+public interface IPartialStats<T> extends Writable {
+
+    /**
+     * Merge another partial result into this result
+     * @param other     Partial result to merge
+     */
+    void merge(T other);
+
+    /**
+     * Generate the stats row entry for the result
+     * @param tag       Tag, i.e. name of stats row
+     * @param encoding  Storage encoding of values
+     * @return  Put
+     */
+    Put toPut(String tag, StorageEncoding encoding);
+}
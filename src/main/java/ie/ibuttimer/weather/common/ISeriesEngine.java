@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+/**
+ * Interface for engines processing the readings of a time series in timestamp order
+ */
+public interface ISeriesEngine {
+
+    /**
+     * Start a new series
+     * @param name      Column name
+     * @param slice     Time slice of the series, see {@link TimeSlicer}
+     */
+    void start(String name, int slice);
+
+    /**
+     * Add a reading
+     * @param timestamp Reading timestamp
+     * @param value     Reading value
+     * @param halo      Reading is part of the halo preceding the slice, so only warms up calculations and is not output
+     */
+    void addReading(long timestamp, double value, boolean halo);
+
+    /**
+     * Add the readings shuffled with a key, i.e. single readings or blocks of readings
+     * @param key       Key
+     * @param values    Readings
+     * @param slicer    Time slicer
+     */
+    default void addReadings(CompositeKey key, Iterable<? extends TimeSeriesData> values, TimeSlicer slicer) {
+        // key is updated as the values are iterated
+        values.forEach(v -> {
+            for (int i = 0; i < v.getCount(); i++) {
+                long timestamp = key.getTimestamp() + v.getOffset(i);
+                addReading(timestamp, v.getValue(i), slicer.isHalo(key.getSlice(), timestamp));
+            }
+        });
+    }
+
+    /**
+     * Finish the series, outputting any stats
+     */
+    void finish();
+}
@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import org.apache.hadoop.hbase.client.Put;
+
+/**
+ * Interface for the table output of series engines
+ */
+public interface ISeriesOutput {
+
+    /**
+     * Write a row entry
+     * @param put   Put
+     */
+    void write(Put put);
+
+    /**
+     * Write a stats row entry, or partial stats row entry if series are time sliced
+     * @param slice     Time slice of the series
+     * @param tag       Tag, i.e. name of stats row
+     * @param stats     Stats
+     */
+    void writeStats(int slice, String tag, IPartialStats<?> stats);
+
+    /**
+     * Get the storage encoding of values in the output table
+     * @return  Encoding
+     */
+    StorageEncoding getEncoding();
+
+    /**
+     * Get the number of salt buckets of reading row keys in the output table
+     * @return  Number of salt buckets, 0 if unsalted
+     */
+    int getSaltBuckets();
+}
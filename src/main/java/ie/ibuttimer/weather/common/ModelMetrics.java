@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Text;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Model metrics; error tracker plus the model details required to calculate the information criteria
+ */
+public class ModelMetrics implements IPartialStats<ModelMetrics> {
+
+    private ErrorTracker errorTracker;
+    private int numParams;
+    private long numSamples;
+    private String params;
+
+    public ModelMetrics() {
+        this(new ErrorTracker(), 0, 0, "");
+    }
+
+    private ModelMetrics(ErrorTracker errorTracker, int numParams, long numSamples, String params) {
+        this.errorTracker = errorTracker;
+        this.numParams = numParams;
+        this.numSamples = numSamples;
+        this.params = params;
+    }
+
+    public static ModelMetrics of(ErrorTracker errorTracker, int numParams, long numSamples, String params) {
+        return new ModelMetrics(errorTracker, numParams, numSamples, params);
+    }
+
+    @Override
+    public void merge(ModelMetrics other) {
+        errorTracker.merge(other.errorTracker);
+        numSamples += other.numSamples;
+        // model details are the same for all parts
+        numParams = other.numParams;
+        params = other.params;
+    }
+
+    @Override
+    public Put toPut(String tag, StorageEncoding encoding) {
+        double mse = errorTracker.getMSE();
+        double maape = errorTracker.getMAAPE();
+        return new Put(Bytes.toBytes(STATS_ROW_MARK + tag))
+                .addColumn(FAMILY_BYTES, MSE.getBytes(), encoding.encode(mse))
+                .addColumn(FAMILY_BYTES, MAAPE.getBytes(), encoding.encode(maape))
+                .addColumn(FAMILY_BYTES, AIC_MSE.getBytes(), encoding.encode(errorTracker.getAIC(numParams, mse)))
+                .addColumn(FAMILY_BYTES, AIC_MAAPE.getBytes(), encoding.encode(errorTracker.getAIC(numParams, maape)))
+                .addColumn(FAMILY_BYTES, BIC_MSE.getBytes(), encoding.encode(errorTracker.getBIC((int) numSamples, numParams, mse)))
+                .addColumn(FAMILY_BYTES, BIC_MAAPE.getBytes(), encoding.encode(errorTracker.getBIC((int) numSamples, numParams, maape)))
+                .addColumn(FAMILY_BYTES, PARAMS.getBytes(), Hbase.storeValueAsString(params));
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        errorTracker.write(out);
+        out.writeInt(numParams);
+        out.writeLong(numSamples);
+        Text.writeString(out, params);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        errorTracker.readFields(in);
+        numParams = in.readInt();
+        numSamples = in.readLong();
+        params = Text.readString(in);
+    }
+}
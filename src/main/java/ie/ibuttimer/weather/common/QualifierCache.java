@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.Arrays;
+
+/**
+ * Cache of values keyed by column qualifier, which may be looked up directly from the backing array of a cell
+ * without copying the qualifier.
+ *
+ * Implemented as an open addressing hash table with linear probing; only suitable for a small number of distinct
+ * qualifiers, e.g. the columns of a table.
+ * @param <V>   Type of cached value
+ */
+public class QualifierCache<V> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[][] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int size;
+
+    public QualifierCache() {
+        init(INITIAL_CAPACITY);
+    }
+
+    private void init(int capacity) {
+        keys = new byte[capacity][];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        size = 0;
+    }
+
+    /**
+     * Get the cached value for a qualifier
+     * @param buffer    Buffer containing qualifier
+     * @param offset    Offset of qualifier in buffer
+     * @param length    Length of qualifier
+     * @return  value or null if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public V get(byte[] buffer, int offset, int length) {
+        int hash = Bytes.hashCode(buffer, offset, length);
+        int mask = keys.length - 1;
+        for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+            if ((hashes[i] == hash) && Bytes.equals(keys[i], 0, keys[i].length, buffer, offset, length)) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cache a value for a qualifier
+     * @param buffer    Buffer containing qualifier
+     * @param offset    Offset of qualifier in buffer
+     * @param length    Length of qualifier
+     * @param value     Value to cache
+     */
+    public void put(byte[] buffer, int offset, int length, V value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        insert(Arrays.copyOfRange(buffer, offset, offset + length), Bytes.hashCode(buffer, offset, length), value);
+    }
+
+    private void insert(byte[] key, int hash, Object value) {
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (keys[i] != null) {
+            if ((hashes[i] == hash) && Bytes.equals(keys[i], key)) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        hashes[i] = hash;
+        values[i] = value;
+        ++size;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        init(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldHashes[i], oldValues[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
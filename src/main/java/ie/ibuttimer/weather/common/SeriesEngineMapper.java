@@ -0,0 +1,275 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.misc.AppLogger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static ie.ibuttimer.weather.Constants.FAMILY_BYTES;
+import static ie.ibuttimer.weather.Constants.OUTPUT_ENCODING;
+import static ie.ibuttimer.weather.Constants.OUTPUT_SALT_BUCKETS;
+import static ie.ibuttimer.weather.misc.Utils.ROWNAME_PREFIX;
+
+/**
+ * Base mapper for map-only jobs, which runs a series engine per column directly over the time ordered rows of its
+ * split and writes the engine output to the output table, avoiding the shuffle.
+ *
+ * The engine of a column is warmed up, when the column's first reading in a split is found, with the column's readings
+ * preceding the split, so that the output at the start of a split matches that of the equivalent reduce job. The rows
+ * preceding the split are scanned backwards until the required number of valid readings of the column is found, or the
+ * start of the scan range is reached, so gaps in a column's readings do not leave its engine short of readings. Partial stats are written per split, keyed by the task
+ * id, for the driver to merge, see {@link SlicePartials}.
+ */
+public abstract class SeriesEngineMapper extends AbstractTSMapper<Mutation> {
+
+    private static final AppLogger logger = AppLogger.of(Logger.getLogger("SeriesEngineMapper"));
+
+    private Series[] series;                    // series of dictionary columns, indexed by id
+
+    private Map<Integer, Series> extensions;    // series of registered columns, keyed by extension id
+
+    private ISeriesOutput output;
+
+    private int part;
+
+    private int warmUpReadings;         // number of readings required to warm up an engine
+
+    private Scan warmUpScan;            // reverse scan of the rows preceding the split, or null if none
+
+    private Connection connection;      // input table connection for warm up scans
+
+    private Table inputTable;
+
+    private long warmUpCount;           // total warm up readings
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+
+        Configuration conf = context.getConfiguration();
+
+        series = new Series[dictionary.size()];
+        extensions = Maps.newHashMap();
+        part = context.getTaskAttemptID().getTaskID().getId();
+        StorageEncoding encoding = StorageEncoding.of(conf, OUTPUT_ENCODING);
+        int saltBuckets = conf.getInt(OUTPUT_SALT_BUCKETS, 0);
+        output = new ISeriesOutput() {
+            @Override
+            public void write(Put put) {
+                try {
+                    context.write(null, put);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted writing output", e);
+                }
+            }
+
+            @Override
+            public void writeStats(int slice, String tag, IPartialStats<?> stats) {
+                // each split only sees part of a series, so always partial
+                write(SlicePartials.partialPut(tag, slice, stats));
+            }
+
+            @Override
+            public StorageEncoding getEncoding() {
+                return encoding;
+            }
+
+            @Override
+            public int getSaltBuckets() {
+                return saltBuckets;
+            }
+        };
+
+        warmUpReadings = getWarmUpReadings(conf);
+        warmUpScan = (warmUpReadings > 0 ? getWarmUpScan(context) : null);
+        warmUpCount = 0;
+    }
+
+    /**
+     * Create an engine
+     * @param conf      Job configuration
+     * @param output    Engine output
+     * @return
+     */
+    protected abstract ISeriesEngine createEngine(Configuration conf, ISeriesOutput output);
+
+    /**
+     * Get the number of readings required to warm up an engine
+     * @param conf      Job configuration
+     * @return
+     */
+    protected abstract int getWarmUpReadings(Configuration conf);
+
+    /**
+     * Get the reverse scan of the rows preceding the split
+     * @param context   Mapper context
+     * @return  Scan, or null if nothing precedes the split
+     * @throws IOException
+     */
+    private Scan getWarmUpScan(Context context) throws IOException {
+        InputSplit split = context.getInputSplit();
+        if (!(split instanceof TableSplit)) {
+            return null;
+        }
+        Configuration conf = context.getConfiguration();
+        byte[] splitStart = ((TableSplit) split).getStartRow();
+        byte[] lowerBound = ROWNAME_PREFIX.getBytes();
+        String jobScan = conf.get(TableInputFormat.SCAN);
+        Scan scan;
+        if (jobScan != null) {
+            // same filter as job scan
+            scan = new Scan(TableMapReduceUtil.convertStringToScan(jobScan));
+            if (Bytes.compareTo(scan.getStartRow(), lowerBound) > 0) {
+                lowerBound = scan.getStartRow();
+            }
+        } else {
+            scan = new Scan();
+        }
+        if (Bytes.compareTo(splitStart, lowerBound) <= 0) {
+            return null; // first split of scan, so nothing precedes it
+        }
+
+        return scan.withStartRow(splitStart, false)
+                .withStopRow(lowerBound, true)
+                .setReversed(true)
+                .setCaching(warmUpReadings);
+    }
+
+    /**
+     * Warm up the engine of a column with the column's readings preceding the split
+     * @param context   Mapper context
+     * @param column    Column series
+     * @param name      Column name
+     * @throws IOException
+     */
+    private void warmUp(Context context, Series column, String name) throws IOException {
+        byte[] qualifier = Bytes.toBytes(name);
+        // project onto the column, so rows without it are skipped by the region servers
+        Scan scan = new Scan(warmUpScan)
+                .setFamilyMap(new TreeMap<>(Bytes.BYTES_COMPARATOR))
+                .addColumn(FAMILY_BYTES, qualifier);
+
+        if (inputTable == null) {
+            Configuration conf = context.getConfiguration();
+            connection = ConnectionFactory.createConnection(conf);
+            inputTable = connection.getTable(TableName.valueOf(conf.get(TableInputFormat.INPUT_TABLE)));
+        }
+
+        long[] timestamps = new long[warmUpReadings];
+        float[] values = new float[warmUpReadings];
+        int count = 0;
+        try (ResultScanner scanner = inputTable.getScanner(scan)) {
+            Result result;
+            while ((count < warmUpReadings) && ((result = scanner.next()) != null)) {
+                Optional<Float> reading = getReading(result, qualifier);
+                if (reading.isPresent()) {
+                    timestamps[count] = getTimestamp(result);
+                    values[count] = reading.get();
+                    ++count;
+                }
+            }
+        }
+
+        for (int i = count - 1; i >= 0; --i) {
+            column.engine.addReading(timestamps[i], values[i], true);
+        }
+        warmUpCount += count;
+    }
+
+    @Override
+    protected void output(Context context, int id, long timestamp, float value) throws IOException {
+        Series column = (id < series.length ? series[id] : extensions.get(id));
+        if (column == null) {
+            String name = dictionary.getName(id);
+            column = new Series(createEngine(context.getConfiguration(), output));
+            column.engine.start(name, part);
+            if (warmUpScan != null) {
+                warmUp(context, column, name);
+            }
+            if (id < series.length) {
+                series[id] = column;
+            } else {
+                extensions.put(id, column);
+            }
+        }
+        column.engine.addReading(timestamp, value, false);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (Series column : Iterables.concat(Arrays.asList(series), extensions.values())) {
+            if (column != null) {
+                column.engine.finish();
+            }
+        }
+        if (warmUpScan != null) {
+            logger.logger().info(String.format("Warmed up split %d with %d readings", part, warmUpCount));
+        }
+
+        try {
+            if (inputTable != null) {
+                inputTable.close();
+            }
+        } finally {
+            inputTable = null;
+            if (connection != null) {
+                connection.close();
+            }
+            connection = null;
+        }
+
+        super.cleanup(context);
+    }
+
+    /**
+     * Engine of a column's series; engines are only created for columns with readings in the split
+     */
+    private static class Series {
+        final ISeriesEngine engine;
+
+        Series(ISeriesEngine engine) {
+            this.engine = engine;
+        }
+    }
+}
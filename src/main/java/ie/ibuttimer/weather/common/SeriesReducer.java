@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Runs series engines over the readings of a reduce group.
+ *
+ * Groups are either a single column, keyed by column id, or when station mode is enabled all the variables of a
+ * station, keyed by station id, in which case an engine is run per variable over the shared stream of readings.
+ */
+public class SeriesReducer {
+
+    private final Supplier<ISeriesEngine> factory;
+    private final ColumnDictionary dictionary;
+    private final StationDictionary stations;
+    private final TimeSlicer slicer;
+    private final List<ISeriesEngine> engines;
+
+    private SeriesReducer(Configuration conf, Supplier<ISeriesEngine> factory) {
+        this.factory = factory;
+        this.dictionary = ColumnDictionary.of(conf);
+        this.stations = (conf.getBoolean(CFG_STATION_MODE, DFLT_STATION_MODE) ? StationDictionary.of(dictionary) : null);
+        this.slicer = TimeSlicer.of(conf);
+        this.engines = new ArrayList<>();
+    }
+
+    /**
+     * Create a series reducer
+     * @param conf      Job configuration
+     * @param factory   Engine factory
+     * @return
+     */
+    public static SeriesReducer of(Configuration conf, Supplier<ISeriesEngine> factory) {
+        return new SeriesReducer(conf, factory);
+    }
+
+    public boolean isStationMode() {
+        return stations != null;
+    }
+
+    /**
+     * Process the readings of a reduce group
+     * @param key       Key
+     * @param values    Readings
+     */
+    public void reduce(CompositeKey key, Iterable<? extends TimeSeriesData> values) {
+        if (isStationMode()) {
+            reduceStation(key, values);
+        } else {
+            ISeriesEngine engine = getEngine(0);
+            engine.start(dictionary.getName(key.getId()), key.getSlice());
+            engine.addReadings(key, values, slicer);
+            engine.finish();
+        }
+    }
+
+    private void reduceStation(CompositeKey key, Iterable<? extends TimeSeriesData> values) {
+        int[] columns = stations.getColumns(key.getId());
+        for (int i = 0; i < columns.length; i++) {
+            getEngine(i).start(dictionary.getName(columns[i]), key.getSlice());
+        }
+
+        // key is updated as the values are iterated
+        values.forEach(v -> {
+            TimeSeriesVector vector = (TimeSeriesVector) v;
+            long timestamp = key.getTimestamp();
+            boolean halo = slicer.isHalo(key.getSlice(), timestamp);
+            for (int i = 0; i < columns.length; i++) {
+                if (vector.isPresent(i)) {
+                    engines.get(i).addReading(timestamp, vector.getVariable(i), halo);
+                }
+            }
+        });
+
+        for (int i = 0; i < columns.length; i++) {
+            engines.get(i).finish();
+        }
+    }
+
+    private ISeriesEngine getEngine(int index) {
+        while (engines.size() <= index) {
+            engines.add(factory.get());
+        }
+        return engines.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(this.hashCode()) +
+                "{" +
+                "stationMode=" + isStationMode() +
+                ", engines=" + engines +
+                '}';
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import com.google.common.collect.Lists;
+import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Utility functions for the partial statistics generated by time sliced series, or by the splits of map-only jobs.
+ *
+ * Each slice (or split) writes its partial result to a row '#~&lt;tag&gt;~&lt;slice&gt;', which the driver merges
+ * into the usual '#&lt;tag&gt;' stats row once the job completes.
+ */
+public class SlicePartials {
+
+    private SlicePartials() {
+        // can't instantiate class
+    }
+
+    /**
+     * Generate the partial stats row entry for a slice
+     * @param tag       Tag, i.e. name of stats row
+     * @param slice     Slice
+     * @param partial   Partial result
+     * @return  Put
+     */
+    public static Put partialPut(String tag, int slice, IPartialStats<?> partial) {
+        return new Put(Bytes.toBytes(SLICE_PARTIAL_ROW_MARK + tag + SLICE_PARTIAL_SEP + slice))
+                .addColumn(FAMILY_BYTES, SLICE_PARTIAL, WritableUtils.toByteArray(partial));
+    }
+
+    /**
+     * Merge the partial stats rows in a table into stats rows, and remove the partial stats rows
+     * @param hbase     Hbase
+     * @param tableName Name of table
+     * @param factory   Partial result factory
+     * @param <T>       Type of partial result
+     * @return  Number of stats rows
+     * @throws IOException
+     */
+    public static <T extends IPartialStats<T>> int merge(Hbase hbase, String tableName, Supplier<T> factory)
+            throws IOException {
+
+        StorageEncoding encoding = hbase.getEncoding(tableName);
+        Map<String, T> merged = new TreeMap<>();
+        List<Delete> deletes = Lists.newArrayList();
+
+        Scan scan = new Scan()
+                .setRowPrefixFilter(Bytes.toBytes(SLICE_PARTIAL_ROW_MARK))
+                .addColumn(FAMILY_BYTES, SLICE_PARTIAL);
+
+        try (Table table = hbase.getConnection().getTable(TableName.valueOf(tableName));
+             ResultScanner scanner = table.getScanner(scan)) {
+
+            DataInputBuffer in = new DataInputBuffer();
+            for (Result result : scanner) {
+                String row = Bytes.toString(result.getRow());
+                String tag = row.substring(SLICE_PARTIAL_ROW_MARK.length(), row.lastIndexOf(SLICE_PARTIAL_SEP));
+
+                byte[] bytes = result.getValue(FAMILY_BYTES, SLICE_PARTIAL);
+                in.reset(bytes, bytes.length);
+                T partial = factory.get();
+                partial.readFields(in);
+
+                merged.merge(tag, partial, (a, b) -> {
+                    a.merge(b);
+                    return a;
+                });
+                deletes.add(new Delete(result.getRow()));
+            }
+
+            table.put(merged.entrySet().stream()
+                    .map(e -> e.getValue().toPut(e.getKey(), encoding))
+                    .collect(Collectors.toList()));
+            table.delete(deletes);
+        }
+        return merged.size();
+    }
+}
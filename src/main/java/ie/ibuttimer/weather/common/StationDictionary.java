@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Dictionary grouping the columns of a {@link ColumnDictionary} by station, e.g. 'temp_3904' and 'dewpt_3904' are
+ * variables of station '3904'.
+ *
+ * The station is the suffix following the last '_' of a column name; a column without a suffix is a station of its
+ * own. Station ids are assigned in station name order and variables in column name order, so the mappers and reducers
+ * of a job derive the same dictionary from the column dictionary.
+ */
+public class StationDictionary {
+
+    public static final String STATION_SEP = "_";
+
+    /** Max variables per station, limited by the presence mask of {@link TimeSeriesVector} */
+    public static final int MAX_VARIABLES = Long.SIZE;
+
+    private final List<String> stations;
+    private final int[][] columns;      // column ids of the variables of each station
+    private final int[] stationIds;     // station id of each column
+    private final int[] indices;        // variable index of each column
+
+    private StationDictionary(ColumnDictionary dictionary) {
+        TreeMap<String, List<Integer>> groups = new TreeMap<>();
+        List<String> names = dictionary.getNames();
+        for (int id = 0; id < names.size(); id++) {
+            groups.computeIfAbsent(getStation(names.get(id)), k -> new ArrayList<>()).add(id);
+        }
+
+        this.stations = new ArrayList<>(groups.keySet());
+        this.columns = new int[groups.size()][];
+        this.stationIds = new int[names.size()];
+        this.indices = new int[names.size()];
+
+        int station = 0;
+        for (List<Integer> ids : groups.values()) {
+            if (ids.size() > MAX_VARIABLES) {
+                throw new IllegalStateException(String.format("Station %s has %d variables, max is %d",
+                        stations.get(station), ids.size(), MAX_VARIABLES));
+            }
+            columns[station] = ids.stream().mapToInt(Integer::intValue).toArray();
+            for (int i = 0; i < columns[station].length; i++) {
+                stationIds[columns[station][i]] = station;
+                indices[columns[station][i]] = i;
+            }
+            ++station;
+        }
+    }
+
+    public static StationDictionary of(ColumnDictionary dictionary) {
+        return new StationDictionary(dictionary);
+    }
+
+    /**
+     * Get the station of a column
+     * @param columnName    Column name
+     * @return
+     */
+    public static String getStation(String columnName) {
+        int idx = columnName.lastIndexOf(STATION_SEP);
+        return (idx < 0 ? columnName : columnName.substring(idx + 1));
+    }
+
+    /**
+     * Get the station id of a column
+     * @param columnId  Column id
+     * @return
+     */
+    public int getStationId(int columnId) {
+        return stationIds[columnId];
+    }
+
+    /**
+     * Get the index of a column in the variables of its station
+     * @param columnId  Column id
+     * @return
+     */
+    public int getIndex(int columnId) {
+        return indices[columnId];
+    }
+
+    /**
+     * Get the column ids of the variables of a station
+     * @param stationId Station id
+     * @return
+     */
+    public int[] getColumns(int stationId) {
+        return columns[stationId];
+    }
+
+    public String getName(int stationId) {
+        return stations.get(stationId);
+    }
+
+    public int size() {
+        return stations.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(stations.get(i)).append('=').append(Arrays.toString(columns[i]));
+        }
+        return getClass().getSimpleName() + "{" +
+                "stations=" + sb +
+                '}';
+    }
+}
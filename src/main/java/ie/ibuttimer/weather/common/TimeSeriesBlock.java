@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A block of consecutive time series readings, at a fixed interval, starting at the timestamp of the
+ * {@link CompositeKey} it is shuffled with.
+ *
+ * Serialised as the interval and count as variable length integers, followed by the float values, i.e.
+ * <pre>
+ *   interval (vlong) + count (vint) + count * 4 byte float
+ * </pre>
+ */
+public class TimeSeriesBlock extends TimeSeriesData {
+
+    private long interval;
+    private int count;
+    private float[] values;
+
+    public TimeSeriesBlock(long interval, int capacity) {
+        this.interval = interval;
+        this.count = 0;
+        this.values = new float[capacity];
+    }
+
+    public TimeSeriesBlock() {
+        this(0, 0);
+    }
+
+    /**
+     * Add a reading to the block
+     * @param value     Reading value
+     */
+    public void add(float value) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, Math.max(count * 2, 1));
+        }
+        values[count++] = value;
+    }
+
+    /**
+     * Remove all readings from the block
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public double getValue() {
+        return getValue(0);
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public long getOffset(int index) {
+        return index * interval;
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVLong(dataOutput, interval);
+        WritableUtils.writeVInt(dataOutput, count);
+        for (int i = 0; i < count; i++) {
+            dataOutput.writeFloat(values[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        interval = WritableUtils.readVLong(dataInput);
+        count = WritableUtils.readVInt(dataInput);
+        if (values.length < count) {
+            values = new float[count];
+        }
+        for (int i = 0; i < count; i++) {
+            values[i] = dataInput.readFloat();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+                "interval=" + interval +
+                ", count=" + count +
+                ", values=" + Arrays.toString(Arrays.copyOf(values, count)) +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TimeSeriesBlock that = (TimeSeriesBlock) o;
+
+        if (interval != that.interval) return false;
+        if (count != that.count) return false;
+        return Arrays.equals(Arrays.copyOf(values, count), Arrays.copyOf(that.values, that.count));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (interval ^ (interval >>> 32));
+        result = 31 * result + count;
+        for (int i = 0; i < count; i++) {
+            result = 31 * result + Float.floatToIntBits(values[i]);
+        }
+        return result;
+    }
+}
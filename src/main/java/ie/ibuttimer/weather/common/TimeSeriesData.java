@@ -22,17 +22,15 @@
 
 package ie.ibuttimer.weather.common;
 
-import ie.ibuttimer.weather.misc.Value;
-import org.apache.hadoop.io.WritableComparable;
-import org.apache.hadoop.io.WritableComparator;
+import ie.ibuttimer.weather.misc.DataTypes;
+import org.apache.hadoop.io.Writable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.Objects;
 
 /**
- * A class representing time series data as a timestamp and value
+ * A class representing a time series data value
  *
  * This implementation is based on Chapter 6. "Moving Average" from
  * "Data Algorithms" by Dr. Mahmoud Parsian
@@ -40,71 +38,133 @@ import java.util.Objects;
  * Release Date: July 2015
  * ISBN: 9781491906187
  * URL: https://learning.oreilly.com/library/view/data-algorithms/9781491906170/
+ *
+ * The timestamp of a reading is carried by the {@link CompositeKey} it is shuffled with, so only the value is
+ * serialised; a one byte type tag followed by the primitive value, i.e.
+ * <pre>
+ *   TAG_FLOAT  + 4 byte float
+ *   TAG_DOUBLE + 8 byte double
+ *   TAG_INT    + 4 byte int
+ *   TAG_LONG   + 8 byte long
+ * </pre>
  */
-public class TimeSeriesData implements WritableComparable<TimeSeriesData> {
+public class TimeSeriesData implements Writable {
 
-    private long timestamp;
-    private Value value;
+    public static final byte TAG_FLOAT = 0;
+    public static final byte TAG_DOUBLE = 1;
+    public static final byte TAG_INT = 2;
+    public static final byte TAG_LONG = 3;
 
-    public TimeSeriesData(long timestamp, Value value) {
-        this.timestamp = timestamp;
-        this.value = value;
+    private byte tag;
+    private double value;
+
+    public TimeSeriesData(float value) {
+        setValue(value);
+    }
+
+    public TimeSeriesData(double value) {
+        setValue(value);
     }
 
     public TimeSeriesData() {
-        this.timestamp = 0L;
-        this.value = Value.of();
+        setValue(0.0f);
     }
 
-    public long getTimestamp() {
-        return timestamp;
+    public double getValue() {
+        return value;
     }
 
-    public void setTimestamp(long timestamp) {
-        this.timestamp = timestamp;
+    /**
+     * Get the number of readings
+     * @return
+     */
+    public int getCount() {
+        return 1;
     }
 
-    public Value getValue() {
+    /**
+     * Get the value of a reading
+     * @param index     Index of reading
+     * @return
+     */
+    public double getValue(int index) {
         return value;
     }
 
-    public void setValue(Value value) {
+    /**
+     * Get the offset of a reading from the timestamp of the key it is shuffled with
+     * @param index     Index of reading
+     * @return  Offset in seconds
+     */
+    public long getOffset(int index) {
+        return 0;
+    }
+
+    public void setValue(float value) {
+        this.tag = TAG_FLOAT;
+        this.value = value;
+    }
+
+    public void setValue(double value) {
+        this.tag = TAG_DOUBLE;
+        this.value = value;
+    }
+
+    public void setValue(int value) {
+        this.tag = TAG_INT;
+        this.value = value;
+    }
+
+    public void setValue(long value) {
+        this.tag = TAG_LONG;
         this.value = value;
     }
 
     /**
-     * Compare object based on timestamp
-     * @param timeSeriesData    Object to compare to
+     * Get the type of the value
      * @return
      */
-    @Override
-    public int compareTo(TimeSeriesData timeSeriesData) {
-        int order = 0;
-        if (this.timestamp < timeSeriesData.timestamp) {
-            order = -1;
-        } else if (this.timestamp > timeSeriesData.timestamp) {
-            order = 1;
+    public DataTypes getType() {
+        DataTypes type;
+        switch (tag) {
+            case TAG_FLOAT:     type = DataTypes.FLOAT;     break;
+            case TAG_DOUBLE:    type = DataTypes.DOUBLE;    break;
+            case TAG_INT:       type = DataTypes.INT;       break;
+            case TAG_LONG:      type = DataTypes.LONG;      break;
+            default:            type = DataTypes.UNKNOWN;   break;
         }
-        return order;
+        return type;
     }
 
     @Override
     public void write(DataOutput dataOutput) throws IOException {
-        dataOutput.writeLong(timestamp);
-        value.write(dataOutput);
+        dataOutput.writeByte(tag);
+        switch (tag) {
+            case TAG_FLOAT:     dataOutput.writeFloat((float) value);   break;
+            case TAG_DOUBLE:    dataOutput.writeDouble(value);          break;
+            case TAG_INT:       dataOutput.writeInt((int) value);       break;
+            case TAG_LONG:      dataOutput.writeLong((long) value);     break;
+            default:            throw new IllegalStateException("Unknown type tag: " + tag);
+        }
     }
 
     @Override
     public void readFields(DataInput dataInput) throws IOException {
-        this.timestamp = dataInput.readLong();
-        this.value.readFields(dataInput);
+        this.tag = dataInput.readByte();
+        switch (tag) {
+            case TAG_FLOAT:     this.value = dataInput.readFloat();     break;
+            case TAG_DOUBLE:    this.value = dataInput.readDouble();    break;
+            case TAG_INT:       this.value = dataInput.readInt();       break;
+            case TAG_LONG:      this.value = dataInput.readLong();      break;
+            default:            throw new IOException("Unknown type tag: " + tag);
+        }
     }
 
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
-                "timestamp=" + timestamp +
-                ", value=" + value +
+                "value=" + value +
+                ", type=" + getType() +
                 '}';
     }
 
@@ -115,29 +175,15 @@ public class TimeSeriesData implements WritableComparable<TimeSeriesData> {
 
         TimeSeriesData that = (TimeSeriesData) o;
 
-        if (timestamp != that.timestamp) return false;
-        return Objects.equals(value, that.value);
+        if (tag != that.tag) return false;
+        return Double.compare(that.value, value) == 0;
     }
 
     @Override
     public int hashCode() {
-        int result = (int) (timestamp ^ (timestamp >>> 32));
-        result = 31 * result + (value != null ? value.hashCode() : 0);
+        long bits = Double.doubleToLongBits(value);
+        int result = (int) (bits ^ (bits >>> 32));
+        result = 31 * result + tag;
         return result;
     }
-
-    public static class TimeSeriesDataComparator extends WritableComparator {
-        public TimeSeriesDataComparator() {
-            super(TimeSeriesData.class);
-        }
-
-        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
-            return compareBytes(b1, s1, l1, b2, s2, l2);
-        }
-    }
-
-    static { // register this comparator
-        WritableComparator.define(TimeSeriesData.class, new TimeSeriesDataComparator());
-    }
-
 }
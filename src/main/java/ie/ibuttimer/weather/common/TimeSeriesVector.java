@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The readings of the variables of a station at the timestamp of the {@link CompositeKey} it is shuffled with.
+ * See {@link StationDictionary}.
+ *
+ * Serialised as the number of variables and a mask of the variables present as variable length integers, followed by
+ * the float values of the present variables, i.e.
+ * <pre>
+ *   size (vint) + present mask (vlong) + present count * 4 byte float
+ * </pre>
+ */
+public class TimeSeriesVector extends TimeSeriesData {
+
+    private int size;
+    private long present;
+    private float[] values;
+
+    public TimeSeriesVector(int size) {
+        this.size = size;
+        this.present = 0;
+        this.values = new float[size];
+    }
+
+    public TimeSeriesVector() {
+        this(0);
+    }
+
+    /**
+     * Set the value of a variable
+     * @param index     Index of variable
+     * @param value     Value
+     */
+    public void set(int index, float value) {
+        values[index] = value;
+        present |= (1L << index);
+    }
+
+    /**
+     * Remove all variable values
+     */
+    public void clear() {
+        present = 0;
+    }
+
+    /**
+     * Get the number of variables
+     * @return
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Check if a variable has a value
+     * @param index     Index of variable
+     * @return
+     */
+    public boolean isPresent(int index) {
+        return (present & (1L << index)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return present == 0;
+    }
+
+    /**
+     * Get the value of a variable
+     * @param index     Index of variable
+     * @return
+     */
+    public double getVariable(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, size);
+        WritableUtils.writeVLong(dataOutput, present);
+        for (int i = 0; i < size; i++) {
+            if (isPresent(i)) {
+                dataOutput.writeFloat(values[i]);
+            }
+        }
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        size = WritableUtils.readVInt(dataInput);
+        present = WritableUtils.readVLong(dataInput);
+        if (values.length < size) {
+            values = new float[size];
+        }
+        for (int i = 0; i < size; i++) {
+            if (isPresent(i)) {
+                values[i] = dataInput.readFloat();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(isPresent(i) ? Float.toString(values[i]) : "-");
+        }
+        return getClass().getSimpleName() + "{" +
+                "size=" + size +
+                ", values=[" + sb + "]" +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TimeSeriesVector that = (TimeSeriesVector) o;
+
+        if (size != that.size) return false;
+        if (present != that.present) return false;
+        for (int i = 0; i < size; i++) {
+            if (isPresent(i) && Float.compare(values[i], that.values[i]) != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = size;
+        result = 31 * result + (int) (present ^ (present >>> 32));
+        for (int i = 0; i < size; i++) {
+            if (isPresent(i)) {
+                result = 31 * result + Float.floatToIntBits(values[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.common;
+
+import org.apache.hadoop.conf.Configuration;
+
+import static ie.ibuttimer.weather.Constants.CFG_SLICE_RANGE;
+
+/**
+ * Divides the time range of a series into contiguous slices, so a single series may be processed by multiple
+ * reducers. Each slice, other than the first, also receives a halo of the readings preceding its start, so
+ * windowed calculations may warm up before reaching the readings of the slice.
+ *
+ * The range is passed to tasks in the job configuration, in the form 'start,end,slices,halo', where start and end
+ * are epoch seconds and halo is in seconds.
+ */
+public class TimeSlicer {
+
+    private final long start;
+    private final long end;
+    private final int slices;
+    private final long halo;
+    private final long width;
+
+    private TimeSlicer(long start, long end, int slices, long halo) {
+        this.start = start;
+        this.end = end;
+        this.slices = Math.max(slices, 1);
+        this.halo = Math.max(halo, 0);
+        this.width = Math.max(((end - start) + this.slices - 1) / this.slices, 1);
+    }
+
+    /**
+     * Create a TimeSlicer
+     * @param start     Start of range, epoch seconds
+     * @param end       End of range (exclusive), epoch seconds
+     * @param slices    Number of slices
+     * @param halo      Halo length in seconds
+     * @return
+     */
+    public static TimeSlicer of(long start, long end, int slices, long halo) {
+        return new TimeSlicer(start, end, slices, halo);
+    }
+
+    /**
+     * Create a TimeSlicer from a configuration
+     * @param conf  Configuration
+     * @return  TimeSlicer, or a single slice TimeSlicer if time slicing is not configured
+     */
+    public static TimeSlicer of(Configuration conf) {
+        TimeSlicer slicer;
+        String[] splits = conf.get(CFG_SLICE_RANGE, "").split(",");
+        if (splits.length == 4) {
+            slicer = of(Long.parseLong(splits[0]), Long.parseLong(splits[1]),
+                    Integer.parseInt(splits[2]), Long.parseLong(splits[3]));
+        } else {
+            slicer = of(0, 0, 1, 0);
+        }
+        return slicer;
+    }
+
+    /**
+     * Add this slicer to a configuration
+     * @param conf  Configuration
+     */
+    public void addToConfig(Configuration conf) {
+        conf.set(CFG_SLICE_RANGE, start + "," + end + "," + slices + "," + halo);
+    }
+
+    /**
+     * Check if series are sliced
+     * @return
+     */
+    public boolean isSliced() {
+        return slices > 1;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    public long getHalo() {
+        return halo;
+    }
+
+    /**
+     * Get the slice a timestamp belongs to
+     * @param timestamp Timestamp, epoch seconds
+     * @return
+     */
+    public int getSlice(long timestamp) {
+        int slice = 0;
+        if (timestamp > start) {
+            slice = (int) Math.min((timestamp - start) / width, slices - 1);
+        }
+        return slice;
+    }
+
+    /**
+     * Get the start of a slice
+     * @param slice Slice
+     * @return  Start timestamp, epoch seconds
+     */
+    public long getSliceStart(int slice) {
+        return start + (slice * width);
+    }
+
+    /**
+     * Get the last slice whose halo includes a timestamp
+     * @param timestamp Timestamp, epoch seconds
+     * @return  Last slice, or the timestamp's own slice if it is not in the halo of any following slice
+     */
+    public int getLastHaloSlice(long timestamp) {
+        int slice = getSlice(timestamp);
+        while ((slice + 1 < slices) && (timestamp >= getSliceStart(slice + 1) - halo)) {
+            ++slice;
+        }
+        return slice;
+    }
+
+    /**
+     * Check if a timestamp is part of the halo of a slice
+     * @param slice     Slice
+     * @param timestamp Timestamp, epoch seconds
+     * @return
+     */
+    public boolean isHalo(int slice, long timestamp) {
+        return (slice > 0) && (timestamp < getSliceStart(slice));
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSlicer{" +
+                "start=" + start +
+                ", end=" + end +
+                ", slices=" + slices +
+                ", halo=" + halo +
+                ", width=" + width +
+                '}';
+    }
+}
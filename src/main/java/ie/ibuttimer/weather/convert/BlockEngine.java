@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.convert;
+
+import ie.ibuttimer.weather.common.ISeriesEngine;
+import ie.ibuttimer.weather.common.ISeriesOutput;
+import ie.ibuttimer.weather.hbase.BlockCodec;
+import ie.ibuttimer.weather.hbase.StorageLayout;
+import ie.ibuttimer.weather.misc.AppLogger;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.log4j.Logger;
+
+import static ie.ibuttimer.weather.Constants.FAMILY_BYTES;
+
+/**
+ * Engine to pack the readings of a series into the blocks of a block storage layout, writing a cell per block
+ */
+public class BlockEngine implements ISeriesEngine {
+
+    private static final AppLogger logger = AppLogger.of(Logger.getLogger("BlockEngine"));
+
+    private final StorageLayout layout;
+    private final ISeriesOutput output;
+    private final BlockCodec.Encoder encoder;
+
+    private String name;
+    private byte[] qualifier;
+    private byte[] blockKey;        // row key of the open block
+    private long blockStop;         // exclusive end of the open block
+    private long readings;
+    private long blocks;
+    private long bytes;
+
+    public BlockEngine(StorageLayout layout, ISeriesOutput output) {
+        if (!layout.isBlock()) {
+            throw new IllegalArgumentException("Not a block storage layout: " + layout.getId());
+        }
+        this.layout = layout;
+        this.output = output;
+        this.encoder = new BlockCodec.Encoder();
+    }
+
+    @Override
+    public void start(String name, int slice) {
+        this.name = name;
+        this.qualifier = name.getBytes();
+        this.readings = 0;
+        this.blocks = 0;
+        this.bytes = 0;
+        encoder.reset();
+    }
+
+    @Override
+    public void addReading(long timestamp, double value, boolean halo) {
+        if (halo) {
+            return;     // readings are not time sliced, so no halo
+        }
+        if ((encoder.getCount() > 0) && (timestamp >= blockStop)) {
+            flush();
+        }
+        if (encoder.getCount() == 0) {
+            blockKey = layout.blockKey(timestamp);
+            blockStop = layout.blockStop(layout.blockStart(blockKey));
+        }
+        encoder.add(timestamp, (float) value);
+        ++readings;
+    }
+
+    @Override
+    public void finish() {
+        if (encoder.getCount() > 0) {
+            flush();
+        }
+        logger.logger().info(String.format("%s: readings=%d  blocks=%d  bytes=%d", name, readings, blocks, bytes));
+    }
+
+    private void flush() {
+        byte[] block = encoder.toBytes();
+        output.write(new Put(blockKey).addColumn(FAMILY_BYTES, qualifier, block));
+        ++blocks;
+        bytes += block.length;
+        encoder.reset();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(this.hashCode()) +
+                "{" +
+                "layout=" + layout +
+                '}';
+    }
+}
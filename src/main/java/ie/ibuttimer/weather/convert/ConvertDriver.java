@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.convert;
+
+import com.google.common.collect.Lists;
+import ie.ibuttimer.weather.common.AbstractDriver;
+import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.hbase.StorageLayout;
+import ie.ibuttimer.weather.misc.AppLogger;
+import ie.ibuttimer.weather.misc.IDriver;
+import ie.ibuttimer.weather.misc.JobConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.mapreduce.Job;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Driver to convert an existing table to the configured storage encoding, or to a block storage layout
+ */
+public class ConvertDriver extends AbstractDriver implements IDriver {
+
+    protected ConvertDriver(AppLogger logger) {
+        super(logger);
+    }
+
+    public static ConvertDriver of(AppLogger logger) {
+        return new ConvertDriver(logger);
+    }
+
+    @Override
+    public int runJob(Configuration config, JobConfig jobCfg) throws IOException, ClassNotFoundException, InterruptedException {
+
+        Pair<Integer, Map<String, String>> properties =
+                getRequiredStringProperties(jobCfg, Lists.newArrayList(CFG_CONVERT_IN_TABLE, CFG_CONVERT_OUT_TABLE));
+
+        int resultCode = properties.getKey();
+
+        if (resultCode == STATUS_SUCCESS) {
+
+            Map<String, String> map = properties.getRight();
+            String inputTable = map.get(CFG_CONVERT_IN_TABLE);
+            String outputTable = map.get(CFG_CONVERT_OUT_TABLE);
+            StorageLayout layout = StorageLayout.of(jobCfg.getProperty(CFG_CONVERT_LAYOUT, DFLT_CONVERT_LAYOUT));
+
+            if (inputTable.equals(outputTable)) {
+                logger.error("Conversion input and output tables must be different");
+                resultCode = STATUS_CONFIG_ERROR;
+            } else if (layout.isBlock()) {
+                resultCode = convertToBlocks(config, jobCfg, inputTable, outputTable, layout);
+            } else if (hbaseConnection(jobCfg).getLayout(inputTable).isBlock()) {
+                logger.error("Conversion of a block storage layout table to the row layout is not supported");
+                resultCode = STATUS_CONFIG_ERROR;
+            } else {
+                // output table records the configured encoding; row keys are copied, so keep the input salt
+                jobCfg.setProperty(CFG_SALT_BUCKETS, hbaseConnection(jobCfg).getSaltBuckets(inputTable));
+                resetTables(jobCfg, Collections.singletonList(outputTable));
+                Hbase hbase = createTable(jobCfg, outputTable, inputTable);
+
+                logger.logger().info(String.format("Converting %s (%s) to %s (%s)",
+                        inputTable, hbase.getEncoding(inputTable).getId(),
+                        outputTable, hbase.getEncoding(outputTable).getId()));
+
+                Job job = initJob(config, jobCfg, "Convert");
+
+                TableMapReduceUtil.initTableMapperJob(
+                        inputTable,                                     // input table
+                        initScan(jobCfg, EnableStartStop.IGNORE),       // all rows, including stats rows
+                        ConvertMapper.class,                            // mapper class
+                        ImmutableBytesWritable.class,                   // mapper output key
+                        Put.class,                                      // mapper output value
+                        job);
+                job.getConfiguration().set(INPUT_ENCODING, hbase.getEncoding(inputTable).getId());
+
+                TableMapReduceUtil.initTableReducerJob(
+                        outputTable,    // output table
+                        null,           // no reducer, map-only
+                        job);
+                job.setNumReduceTasks(0);
+
+                resultCode = startJob(job, jobCfg);
+            }
+        }
+        return resultCode;
+    }
+
+    /**
+     * Convert the readings of a table to a block storage layout. The readings of each series are shuffled to a
+     * reducer in time order, which packs them into a block per period.
+     * @param config        Configuration
+     * @param jobCfg        Job configuration
+     * @param inputTable    Table to convert
+     * @param outputTable   Converted table
+     * @param layout        Block storage layout
+     * @return  Result code
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws InterruptedException
+     */
+    private int convertToBlocks(Configuration config, JobConfig jobCfg, String inputTable, String outputTable,
+                                StorageLayout layout) throws IOException, ClassNotFoundException, InterruptedException {
+
+        // blocks store float values in unsalted rows
+        jobCfg.setProperty(CFG_STORAGE_ENCODING, StorageEncoding.FLOAT.getId());
+        jobCfg.setProperty(CFG_SALT_BUCKETS, 0);
+        if (StringUtils.isEmpty(jobCfg.getProperty(CFG_COLUMN_LIST, ""))) {
+            jobCfg.setProperty(CFG_COLUMN_LIST, ".*");  // all columns
+        }
+
+        Hbase hbase = resetTables(jobCfg, Collections.singletonList(outputTable), layout);
+        if (!hbase.tableExists(TableName.valueOf(outputTable))) {
+            hbase.createTable(outputTable, FAMILY, new byte[0][], StorageEncoding.FLOAT, 0, layout);
+        }
+
+        logger.logger().info(String.format("Converting %s (%s) to %s (%s blocks)",
+                inputTable, hbase.getLayout(inputTable).getId(), outputTable, layout.getId()));
+
+        Job job = initJob(config, jobCfg, "Convert");
+
+        initSeriesMapperJob(
+                inputTable,             // input table
+                initScan(jobCfg),       // Scan instance to control CF and attribute selection
+                false,                  // series are packed individually
+                job, jobCfg);
+
+        TableMapReduceUtil.initTableReducerJob(
+                outputTable,                // output table
+                BlockTableReducer.class,    // reducer class
+                job);
+
+        int resultCode = startJob(job, jobCfg);
+        if ((resultCode == STATUS_SUCCESS) && jobCfg.isWait() &&
+                jobCfg.getProperty(CFG_CONVERT_BENCHMARK, DFLT_CONVERT_BENCHMARK)) {
+            LayoutBenchmark.of(hbase, logger).compare(initScan(jobCfg), inputTable, outputTable);
+        }
+        return resultCode;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.convert;
+
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.misc.AppLogger;
+import ie.ibuttimer.weather.misc.DataTypes;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Mapper to convert the values of a table from its storage encoding to another encoding.
+ * Values which are not numeric, i.e. dates, model parameters and partial results, are copied as is. Numeric values
+ * which cannot be converted, e.g. empty strings, are counted and skipped, so the output table holds no values which
+ * are not in its encoding.
+ */
+public class ConvertMapper extends TableMapper<ImmutableBytesWritable, Mutation> {
+
+    private static final AppLogger logger = AppLogger.of(Logger.getLogger("ConvertMapper"));
+
+    public enum Counters { CONVERTED, COPIED, UNCONVERTIBLE }
+
+    private StorageEncoding inEncoding;
+    private StorageEncoding outEncoding;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+
+        Configuration conf = context.getConfiguration();
+        inEncoding = StorageEncoding.of(conf, INPUT_ENCODING);
+        outEncoding = StorageEncoding.of(conf, OUTPUT_ENCODING);
+    }
+
+    @Override
+    protected void map(ImmutableBytesWritable key, Result value, Context context) throws IOException, InterruptedException {
+
+        Put put = new Put(value.getRow());
+        for (Cell cell : value.rawCells()) {
+            byte[] qualifier = CellUtil.cloneQualifier(cell);
+            byte[] converted = CellUtil.cloneValue(cell);
+
+            DataTypes type = StorageEncoding.getColumnType(Bytes.toString(qualifier));
+            if (type == DataTypes.STRING) {
+                context.getCounter(Counters.COPIED).increment(1);
+            } else {
+                try {
+                    double decoded = inEncoding.decode(type, cell.getValueArray(), cell.getValueOffset(),
+                            cell.getValueLength());
+                    if (type == DataTypes.LONG) {
+                        converted = outEncoding.encode((long) decoded);
+                    } else {
+                        converted = outEncoding.encode(decoded);
+                    }
+                    context.getCounter(Counters.CONVERTED).increment(1);
+                } catch (NumberFormatException nfe) {
+                    logger.warn(String.format("Unable to convert %s:%s, skipping: %s",
+                            Bytes.toString(value.getRow()), Bytes.toString(qualifier), nfe.getMessage()));
+                    context.getCounter(Counters.UNCONVERTIBLE).increment(1);
+                    continue;
+                }
+            }
+            put.addColumn(CellUtil.cloneFamily(cell), qualifier, cell.getTimestamp(), converted);
+        }
+
+        if (!put.isEmpty()) {
+            context.write(key, put);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.convert;
+
+import ie.ibuttimer.weather.hbase.BlockCodec;
+import ie.ibuttimer.weather.hbase.Hbase;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.hbase.StorageLayout;
+import ie.ibuttimer.weather.misc.AppLogger;
+import ie.ibuttimer.weather.misc.DataTypes;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static ie.ibuttimer.weather.Constants.DATE_ATTR;
+import static ie.ibuttimer.weather.Constants.FAMILY_BYTES;
+
+/**
+ * Benchmark of the scan speed and storage size of the storage layouts of tables holding the same readings.
+ * Each table is scanned in full from the driver, decoding the value of every reading as a mapper would, so the scan
+ * times include the transfer of the cells from the region servers and the decoding of the values or blocks.
+ * Storage sizes are those of the store files on the filesystem, once the tables are flushed.
+ */
+public class LayoutBenchmark {
+
+    private final Hbase hbase;
+    private final AppLogger logger;
+
+    private LayoutBenchmark(Hbase hbase, AppLogger logger) {
+        this.hbase = hbase;
+        this.logger = logger;
+    }
+
+    public static LayoutBenchmark of(Hbase hbase, AppLogger logger) {
+        return new LayoutBenchmark(hbase, logger);
+    }
+
+    /**
+     * Compare tables and log the results
+     * @param scan      Scan of the reading rows to compare
+     * @param tables    Names of tables to compare
+     * @throws IOException
+     */
+    public void compare(Scan scan, String... tables) throws IOException {
+
+        logger.logger().info(String.format("%-24s %-6s %12s %10s %14s %14s %10s", "Table", "Layout", "Readings",
+                "Scan ms", "Readings/s", "Size bytes", "Bytes/rdg"));
+        for (String table : tables) {
+            Measurement scanned = scan(table, scan);
+            long size = hbase.getStorageSize(table);
+            logger.logger().info(String.format("%-24s %-6s %12d %10d %14.0f %14d %10.2f",
+                    table, hbase.getLayout(table).getId(), scanned.readings, scanned.millis,
+                    (scanned.millis > 0) ? (scanned.readings * 1000.0) / scanned.millis : 0.0,
+                    size, (scanned.readings > 0) ? (double) size / scanned.readings : 0.0));
+        }
+    }
+
+    /**
+     * Scan the readings of a table
+     * @param tableName Name of table
+     * @param scan      Scan of the reading rows
+     * @return  Measurement
+     * @throws IOException
+     */
+    private Measurement scan(String tableName, Scan scan) throws IOException {
+
+        StorageEncoding encoding = hbase.getEncoding(tableName);
+        StorageLayout layout = hbase.getLayout(tableName);
+        int saltBuckets = hbase.getSaltBuckets(tableName);
+        Pair<Long, Long> range = Hbase.readingRange(scan);
+        if (saltBuckets > 0) {
+            scan = Hbase.saltScan(scan, saltBuckets);
+        }
+        if (layout.isBlock()) {
+            scan = Hbase.blockScan(scan, layout);
+        }
+
+        long readings = 0;
+        double sum = 0;     // consume the decoded values
+        BlockCodec.Decoder decoder = new BlockCodec.Decoder();
+        long start = System.nanoTime();
+        try (Table table = hbase.getConnection().getTable(TableName.valueOf(tableName));
+             ResultScanner scanner = table.getScanner(scan)) {
+
+            for (Result result : scanner) {
+                for (Cell cell : result.rawCells()) {
+                    if (!CellUtil.matchingFamily(cell, FAMILY_BYTES) || CellUtil.matchingQualifier(cell, DATE_ATTR)) {
+                        continue;
+                    }
+                    if (layout.isBlock()) {
+                        decoder.reset(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                        while (decoder.next() && (decoder.getTimestamp() < range.getRight())) {
+                            if (decoder.getTimestamp() >= range.getLeft()) {
+                                sum += decoder.getValue();
+                                ++readings;
+                            }
+                        }
+                    } else {
+                        try {
+                            sum += encoding.decode(DataTypes.FLOAT, cell.getValueArray(), cell.getValueOffset(),
+                                    cell.getValueLength());
+                            ++readings;
+                        } catch (NumberFormatException nfe) {
+                            // not a reading, e.g. empty string
+                        }
+                    }
+                }
+            }
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.logger().debug(String.format("%s: sum of readings %f", tableName, sum));
+
+        return new Measurement(readings, millis);
+    }
+
+    private static class Measurement {
+        final long readings;
+        final long millis;
+
+        Measurement(long readings, long millis) {
+            this.readings = readings;
+            this.millis = millis;
+        }
+    }
+}
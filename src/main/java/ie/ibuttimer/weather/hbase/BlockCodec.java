@@ -0,0 +1,344 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import java.util.Arrays;
+
+/**
+ * Codec for blocks of time series readings, compressing the timestamps with delta-of-delta encoding and the float
+ * values with XOR encoding, as per the Gorilla time series database.
+ *
+ * A block is a bit stream consisting of
+ * <pre>
+ *   32 bits    number of readings
+ *   64 bits    timestamp of the first reading, epoch seconds
+ *   32 bits    value of the first reading, float bits
+ * </pre>
+ * followed by the timestamp and value of each subsequent reading. The timestamp is encoded as the difference between
+ * its delta from the previous timestamp and the previous delta, i.e. the delta-of-delta D
+ * <pre>
+ *   '0'                    D = 0
+ *   '10'   + 7 bits        D in [-63, 64]
+ *   '110'  + 9 bits        D in [-255, 256]
+ *   '1110' + 12 bits       D in [-2047, 2048]
+ *   '1111' + 32 bits       otherwise
+ * </pre>
+ * so readings at a regular interval cost a single bit. The value is encoded as its XOR X with the previous value
+ * <pre>
+ *   '0'                                            X = 0
+ *   '10' + meaningful bits                         meaningful bits of X within those of the previous X
+ *   '11' + 5 bits leading zeros
+ *        + 5 bits length of meaningful bits - 1
+ *        + meaningful bits                         otherwise
+ * </pre>
+ * so unchanged values cost a single bit, and slowly changing values only their differing bits.
+ *
+ * See "Gorilla: A Fast, Scalable, In-Memory Time Series Database", T. Pelkonen et al., VLDB 2015,
+ * http://www.vldb.org/pvldb/vol8/p1816-teller.pdf
+ */
+public final class BlockCodec {
+
+    private static final int COUNT_BITS = 32;
+
+    private BlockCodec() {
+        // static and nested classes only
+    }
+
+    /**
+     * Encoder of a block. Readings must be added in ascending timestamp order.
+     * Instances are reusable, but not thread safe.
+     */
+    public static class Encoder {
+
+        private byte[] buffer = new byte[64];
+        private int bitLength;
+        private int count;
+
+        private long prevTimestamp;
+        private long prevDelta;
+        private int prevValue;
+        private int prevLeading;
+        private int prevTrailing;
+
+        public Encoder() {
+            reset();
+        }
+
+        /**
+         * Reset the encoder to start a new block
+         */
+        public void reset() {
+            Arrays.fill(buffer, (byte) 0);
+            bitLength = COUNT_BITS;     // count written on completion
+            count = 0;
+            prevDelta = 0;
+            prevLeading = -1;
+            prevTrailing = 0;
+        }
+
+        /**
+         * Add a reading to the block
+         * @param timestamp Epoch seconds
+         * @param value     Value
+         * @throws IllegalArgumentException if the timestamp does not follow that of the previous reading
+         */
+        public void add(long timestamp, float value) {
+            int bits = Float.floatToIntBits(value);
+            if (count == 0) {
+                writeBits(timestamp, 64);
+                writeBits(bits, 32);
+                prevTimestamp = timestamp;
+                prevValue = bits;
+            } else {
+                if (timestamp <= prevTimestamp) {
+                    throw new IllegalArgumentException(String.format("Reading timestamp %d does not follow %d",
+                            timestamp, prevTimestamp));
+                }
+                long delta = timestamp - prevTimestamp;
+                writeTimestamp(delta - prevDelta);
+                writeValue(bits ^ prevValue);
+                prevTimestamp = timestamp;
+                prevDelta = delta;
+                prevValue = bits;
+            }
+            ++count;
+        }
+
+        private void writeTimestamp(long dod) {
+            if (dod == 0) {
+                writeBits(0b0, 1);
+            } else if ((dod >= -63) && (dod <= 64)) {
+                writeBits(0b10, 2);
+                writeBits(dod + 63, 7);
+            } else if ((dod >= -255) && (dod <= 256)) {
+                writeBits(0b110, 3);
+                writeBits(dod + 255, 9);
+            } else if ((dod >= -2047) && (dod <= 2048)) {
+                writeBits(0b1110, 4);
+                writeBits(dod + 2047, 12);
+            } else if ((dod >= Integer.MIN_VALUE) && (dod <= Integer.MAX_VALUE)) {
+                writeBits(0b1111, 4);
+                writeBits(dod, 32);
+            } else {
+                throw new IllegalArgumentException("Reading timestamp delta out of range: " + dod);
+            }
+        }
+
+        private void writeValue(int xor) {
+            if (xor == 0) {
+                writeBits(0b0, 1);
+            } else {
+                int leading = Integer.numberOfLeadingZeros(xor);
+                int trailing = Integer.numberOfTrailingZeros(xor);
+                if ((prevLeading >= 0) && (leading >= prevLeading) && (trailing >= prevTrailing)) {
+                    // meaningful bits fit in the previous window
+                    writeBits(0b10, 2);
+                    writeBits(xor >>> prevTrailing, 32 - prevLeading - prevTrailing);
+                } else {
+                    int meaningful = 32 - leading - trailing;
+                    writeBits(0b11, 2);
+                    writeBits(leading, 5);
+                    writeBits(meaningful - 1, 5);
+                    writeBits(xor >>> trailing, meaningful);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+        }
+
+        /**
+         * Write the low bits of a value, most significant first
+         */
+        private void writeBits(long value, int bits) {
+            int required = (bitLength + bits + 7) >>> 3;
+            if (required > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+            }
+            while (bits > 0) {
+                int free = 8 - (bitLength & 7);
+                int n = Math.min(free, bits);
+                int chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+                buffer[bitLength >>> 3] |= (byte) (chunk << (free - n));
+                bitLength += n;
+                bits -= n;
+            }
+        }
+
+        /**
+         * Get the number of readings in the block
+         * @return
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Get the encoded block
+         * @return  New array containing the block
+         */
+        public byte[] toBytes() {
+            byte[] block = Arrays.copyOf(buffer, (bitLength + 7) >>> 3);
+            for (int i = 0; i < 4; ++i) {
+                block[i] = (byte) (count >>> (24 - (8 * i)));
+            }
+            return block;
+        }
+    }
+
+    /**
+     * Decoder of a block. Readings are decoded one at a time as the block is iterated, so only the readings consumed are
+     * decoded.
+     * Instances are reusable, but not thread safe.
+     */
+    public static class Decoder {
+
+        private byte[] buffer;
+        private int offset;
+        private int bitLength;
+        private int bitPosition;
+        private int count;
+        private int index;
+
+        private long timestamp;
+        private long delta;
+        private int value;
+        private int leading;
+        private int trailing;
+
+        /**
+         * Reset the decoder to iterate a block
+         * @param buffer    Buffer containing the block
+         * @param offset    Offset of the block
+         * @param length    Length of the block
+         * @throws IllegalArgumentException if the block is truncated
+         */
+        public Decoder reset(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.bitLength = length * 8;
+            this.bitPosition = 0;
+            this.index = -1;
+            this.delta = 0;
+            this.leading = 0;
+            this.trailing = 0;
+            this.count = (length > 0) ? (int) readBits(COUNT_BITS) : 0;
+            return this;
+        }
+
+        /**
+         * Get the number of readings in the block
+         * @return
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Decode the next reading
+         * @return  true if a reading was decoded, false if the block is exhausted
+         * @throws IllegalArgumentException if the block is truncated
+         */
+        public boolean next() {
+            if (index + 1 >= count) {
+                index = count;
+                return false;
+            }
+            ++index;
+            if (index == 0) {
+                timestamp = readBits(64);
+                value = (int) readBits(32);
+            } else {
+                delta += readTimestamp();
+                timestamp += delta;
+                value ^= readValue();
+            }
+            return true;
+        }
+
+        private long readTimestamp() {
+            long dod;
+            if (readBits(1) == 0) {
+                dod = 0;
+            } else if (readBits(1) == 0) {
+                dod = readBits(7) - 63;
+            } else if (readBits(1) == 0) {
+                dod = readBits(9) - 255;
+            } else if (readBits(1) == 0) {
+                dod = readBits(12) - 2047;
+            } else {
+                dod = (int) readBits(32);
+            }
+            return dod;
+        }
+
+        private int readValue() {
+            int xor;
+            if (readBits(1) == 0) {
+                xor = 0;
+            } else {
+                if (readBits(1) != 0) {
+                    leading = (int) readBits(5);
+                    trailing = 32 - leading - ((int) readBits(5) + 1);
+                }
+                xor = (int) readBits(32 - leading - trailing) << trailing;
+            }
+            return xor;
+        }
+
+        /**
+         * Read bits, most significant first
+         */
+        private long readBits(int bits) {
+            if (bitPosition + bits > bitLength) {
+                throw new IllegalArgumentException(String.format("Truncated block, reading %d of %d readings",
+                        index + 1, count));
+            }
+            long result = 0;
+            while (bits > 0) {
+                int available = 8 - (bitPosition & 7);
+                int n = Math.min(available, bits);
+                int b = buffer[offset + (bitPosition >>> 3)] & 0xff;
+                result = (result << n) | ((b >>> (available - n)) & ((1 << n) - 1));
+                bitPosition += n;
+                bits -= n;
+            }
+            return result;
+        }
+
+        /**
+         * Get the timestamp of the current reading
+         * @return  Epoch seconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Get the value of the current reading
+         * @return
+         */
+        public float getValue() {
+            return Float.intBitsToFloat(value);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Table writer batching mutations through a BufferedMutator.
+ * Failures of asynchronous flushes are recorded by the exception listener and rethrown by the next write, flush or
+ * close, so they fail the task rather than being lost.
+ */
+public class BufferedTableWriter implements Closeable {
+
+    private final Connection connection;
+    private final BufferedMutator mutator;
+    private final AtomicReference<RetriesExhaustedWithDetailsException> error;
+
+    private BufferedTableWriter(Connection connection, BufferedMutator mutator,
+                                AtomicReference<RetriesExhaustedWithDetailsException> error) {
+        this.connection = connection;
+        this.mutator = mutator;
+        this.error = error;
+    }
+
+    /**
+     * Create a writer
+     * @param conf          Configuration
+     * @param tableName     Name of table to write to
+     * @param bufferSize    Write buffer size in bytes, or 0 for the hbase default
+     * @param flushPeriod   Period in milliseconds after which buffered mutations are flushed, or 0 to only flush when
+     *                      the buffer is full
+     * @return  Writer
+     * @throws IOException
+     */
+    public static BufferedTableWriter of(Configuration conf, String tableName, long bufferSize, long flushPeriod)
+            throws IOException {
+        AtomicReference<RetriesExhaustedWithDetailsException> error = new AtomicReference<>();
+
+        BufferedMutatorParams params = new BufferedMutatorParams(TableName.valueOf(tableName))
+                .listener((e, m) -> error.compareAndSet(null, e));
+        if (bufferSize > 0) {
+            params.writeBufferSize(bufferSize);
+        }
+        if (flushPeriod > 0) {
+            params.setWriteBufferPeriodicFlushTimeoutMs(flushPeriod);
+        }
+
+        Connection connection = ConnectionFactory.createConnection(conf);
+        BufferedMutator mutator;
+        try {
+            mutator = connection.getBufferedMutator(params);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return new BufferedTableWriter(connection, mutator, error);
+    }
+
+    /**
+     * Write a mutation
+     * @param mutation  Mutation to write
+     * @throws IOException if this or a previous write failed
+     */
+    public void write(Mutation mutation) throws IOException {
+        checkError();
+        mutator.mutate(mutation);
+    }
+
+    /**
+     * Flush buffered mutations
+     * @throws IOException if this or a previous write failed
+     */
+    public void flush() throws IOException {
+        mutator.flush();
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        RetriesExhaustedWithDetailsException e = error.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Flush buffered mutations and close the writer
+     * @throws IOException if this or a previous write failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            mutator.close();
+        } finally {
+            connection.close();
+        }
+        checkError();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import ie.ibuttimer.weather.misc.AppLogger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HFileOutputFormat2;
+import org.apache.hadoop.hbase.mapreduce.MutationSerialization;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.hbase.tool.BulkLoadHFiles;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+
+/**
+ * Bulk load the output of a table output job.
+ * The job's puts are redirected to sequence files in a staging directory; once the job completes, a second job sorts
+ * them into HFiles partitioned by the regions of the output table, which are then bulk loaded into the table.
+ */
+public class BulkLoader {
+
+    private static final String PUTS_DIR = "puts";
+    private static final String HFILES_DIR = "hfiles";
+
+    private final Job job;
+    private final TableName table;
+    private final Path staging;
+
+    private BulkLoader(Job job, TableName table, Path staging) {
+        this.job = job;
+        this.table = table;
+        this.staging = staging;
+    }
+
+    /**
+     * Redirect the output of a job initialised with a table output, to staging files for bulk loading
+     * @param job           Job
+     * @param stagingRoot   Root of staging directories
+     * @return  Bulk loader
+     */
+    public static BulkLoader of(Job job, String stagingRoot) {
+        Configuration conf = job.getConfiguration();
+        TableName table = TableName.valueOf(conf.get(TableOutputFormat.OUTPUT_TABLE));
+        Path staging = new Path(stagingRoot,
+                table.getNameAsString() + "_" + Long.toString(System.currentTimeMillis(), 36));
+
+        conf.setStrings("io.serializations", conf.get("io.serializations"), MutationSerialization.class.getName());
+        job.setOutputFormatClass(PutFileOutputFormat.class);
+        FileOutputFormat.setOutputPath(job, new Path(staging, PUTS_DIR));
+
+        return new BulkLoader(job, table, staging);
+    }
+
+    /**
+     * Generate HFiles from the job output and bulk load them into the output table
+     * @param hbase     Hbase
+     * @param verbose   Verbose flag
+     * @param logger    Logger
+     * @return  true if successfully loaded
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws InterruptedException
+     */
+    public boolean load(Hbase hbase, boolean verbose, AppLogger logger)
+            throws IOException, ClassNotFoundException, InterruptedException {
+
+        Configuration conf = job.getConfiguration();
+        Path hfiles = new Path(staging, HFILES_DIR);
+        boolean loaded;
+        try {
+            Job hfileJob = hfileJob(conf, job.getJobName() + " HFiles", new Path(staging, PUTS_DIR), hfiles);
+
+            try (Table hTable = hbase.getConnection().getTable(table);
+                 RegionLocator locator = hbase.getConnection().getRegionLocator(table)) {
+                // sorts & partitions by the region boundaries of the output table
+                HFileOutputFormat2.configureIncrementalLoad(hfileJob, hTable, locator);
+            }
+
+            loaded = hfileJob.waitForCompletion(verbose);
+            if (loaded) {
+                logger.logger().info(String.format("Bulk loading %s into %s", hfiles, table));
+                BulkLoadHFiles.create(conf).bulkLoad(table, hfiles);
+            } else {
+                logger.error("Unable to generate HFiles for " + table);
+            }
+        } finally {
+            FileSystem fs = staging.getFileSystem(conf);
+            fs.delete(staging, true);
+        }
+        return loaded;
+    }
+
+    /**
+     * Create the job to sort the staged puts into HFiles.
+     * The job is created from the configuration of the job whose output is being loaded, so the cluster settings are
+     * the same, but the key comparators and combiner of that job are cleared, as the puts are keyed by row key. The
+     * partitioner, reducer and output format are set by {@link HFileOutputFormat2#configureIncrementalLoad}.
+     * @param conf      Configuration of job whose output is being loaded
+     * @param name      Job name
+     * @param puts      Staged puts
+     * @param hfiles    HFile output directory
+     * @return  Job
+     * @throws IOException
+     */
+    static Job hfileJob(Configuration conf, String name, Path puts, Path hfiles) throws IOException {
+        Job hfileJob = Job.getInstance(conf, name);
+        Configuration hfileConf = hfileJob.getConfiguration();
+        hfileConf.unset(MRJobConfig.GROUP_COMPARATOR_CLASS);
+        hfileConf.unset(MRJobConfig.COMBINE_CLASS_ATTR);
+        hfileJob.setSortComparatorClass(ImmutableBytesWritable.Comparator.class);
+
+        hfileJob.setJarByClass(BulkLoader.class);
+        hfileJob.setInputFormatClass(SequenceFileInputFormat.class);
+        FileInputFormat.addInputPath(hfileJob, puts);
+        hfileJob.setMapperClass(Mapper.class);      // identity, PutSortReducer does the work
+        hfileJob.setMapOutputKeyClass(ImmutableBytesWritable.class);
+        hfileJob.setMapOutputValueClass(Put.class);
+        FileOutputFormat.setOutputPath(hfileJob, hfiles);
+        return hfileJob;
+    }
+}
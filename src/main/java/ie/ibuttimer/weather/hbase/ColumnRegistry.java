@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableExistsException;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Registry of the columns found by the mappers of a job which are missing from the job's column dictionary, i.e. were
+ * missed by the sample the driver resolved the dictionary from.
+ *
+ * Each job has a row of the registry table, with a cell per registered column whose qualifier is the column id and
+ * value is the column name, so reducers can look up the names of the ids in the map output. Rows expire after the
+ * time to live of the registry table.
+ */
+public class ColumnRegistry implements Closeable {
+
+    /** Time to live of registry rows in seconds */
+    public static final int TTL = (int) TimeUnit.DAYS.toSeconds(7);
+
+    private final Connection connection;
+    private final Table table;
+    private final byte[] row;
+
+    private ColumnRegistry(Connection connection, Table table, byte[] row) {
+        this.connection = connection;
+        this.table = table;
+        this.row = row;
+    }
+
+    /**
+     * Open the registry of a job
+     * @param conf  Job configuration
+     * @return  Registry
+     * @throws IOException
+     */
+    public static ColumnRegistry of(Configuration conf) throws IOException {
+        if (!isConfigured(conf)) {
+            throw new IllegalStateException("Column registry not configured");
+        }
+        Connection connection = ConnectionFactory.createConnection(conf);
+        Table table;
+        try {
+            table = connection.getTable(TableName.valueOf(conf.get(COLUMN_REGISTRY)));
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return new ColumnRegistry(connection, table, Bytes.toBytes(conf.get(COLUMN_REGISTRY_ROW)));
+    }
+
+    /**
+     * Check if a job has a registry
+     * @param conf  Job configuration
+     * @return
+     */
+    public static boolean isConfigured(Configuration conf) {
+        return !StringUtils.isEmpty(conf.get(COLUMN_REGISTRY)) && !StringUtils.isEmpty(conf.get(COLUMN_REGISTRY_ROW));
+    }
+
+    /**
+     * Add a registry to the job configuration
+     * @param conf      Job configuration
+     * @param tableName Name of registry table
+     * @param row       Registry row of the job
+     */
+    public static void addToConfig(Configuration conf, String tableName, String row) {
+        conf.set(COLUMN_REGISTRY, tableName);
+        conf.set(COLUMN_REGISTRY_ROW, row);
+    }
+
+    /**
+     * Create the registry table if it does not exist
+     * @param hbase     Hbase
+     * @param tableName Name of registry table
+     * @throws IOException
+     */
+    public static void createTable(Hbase hbase, String tableName) throws IOException {
+        TableName name = TableName.valueOf(tableName);
+        if (!hbase.tableExists(name)) {
+            try {
+                hbase.getAdmin().createTable(TableDescriptorBuilder.newBuilder(name)
+                        .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(FAMILY_BYTES)
+                                .setTimeToLive(TTL)
+                                .build())
+                        .build());
+            } catch (TableExistsException e) {
+                // created by another driver in the meantime
+            }
+        }
+    }
+
+    /**
+     * Register a column, unless its id is already registered
+     * @param id    Column id
+     * @param name  Column name
+     * @return  Name of the column registered with the id, which differs from <code>name</code> if another column has
+     *          the same id
+     * @throws IOException
+     */
+    public String register(int id, String name) throws IOException {
+        byte[] qualifier = Bytes.toBytes(id);
+        boolean added = table.checkAndMutate(row, FAMILY_BYTES)
+                .qualifier(qualifier)
+                .ifNotExists()
+                .thenPut(new Put(row).addColumn(FAMILY_BYTES, qualifier, Bytes.toBytes(name)));
+        if (!added) {
+            byte[] registered = table.get(new Get(row).addColumn(FAMILY_BYTES, qualifier))
+                                    .getValue(FAMILY_BYTES, qualifier);
+            name = Bytes.toString(registered);
+        }
+        return name;
+    }
+
+    /**
+     * Load the registered columns
+     * @return  Map of column id to name
+     * @throws IOException
+     */
+    public Map<Integer, String> load() throws IOException {
+        Map<Integer, String> columns = Maps.newHashMap();
+        Result result = table.get(new Get(row).addFamily(FAMILY_BYTES));
+        if (!result.isEmpty()) {
+            for (Cell cell : result.rawCells()) {
+                columns.put(Bytes.toInt(CellUtil.cloneQualifier(cell)), Bytes.toString(CellUtil.cloneValue(cell)));
+            }
+        }
+        return columns;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            table.close();
+        } finally {
+            connection.close();
+        }
+    }
+}
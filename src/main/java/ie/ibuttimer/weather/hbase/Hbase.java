@@ -24,35 +24,97 @@ package ie.ibuttimer.weather.hbase;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Maps;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import ie.ibuttimer.weather.misc.AppLogger;
 import ie.ibuttimer.weather.misc.DataTypes;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
 import ie.ibuttimer.weather.misc.Value;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.apache.log4j.Logger;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static ie.ibuttimer.weather.Constants.FAMILY_BYTES;
+import static ie.ibuttimer.weather.misc.Utils.ROWNAME_PREFIX;
 import static org.apache.hadoop.hbase.client.TableDescriptor.COMPARATOR;
 
+/**
+ * Hbase access.
+ * Instances are shared per configuration resource, so the connection, which is heavyweight and thread-safe, is
+ * established once per process and reused by all jobs, until closed by {@link #closeAll()}.
+ * The admin handle is lightweight and not thread-safe, it is cached for use by the driver thread and closed along with
+ * the connection. Table and scanner handles are obtained per operation and closed after use. An asynchronous connection
+ * is established on demand for admin operations run concurrently on several tables.
+ */
 public class Hbase {
 
+    /** Table metadata key for the number of salt buckets of reading row keys */
+    public static final String SALT_METADATA_KEY = "weather.salt_buckets";
+
+    private static final AppLogger logger = AppLogger.of(Logger.getLogger("Hbase"));
+
+    private static final Map<String, Hbase> instances = new ConcurrentHashMap<>();
+
     private final Configuration configuration;
     private Connection connection = null;
+    private Admin admin = null;
+    private AsyncConnection asyncConnection = null;
 
     private Hbase(String resource) {
         this.configuration = configure(resource);
     }
 
+    /**
+     * Get the shared instance for a configuration resource
+     * @param resource  Configuration resource
+     * @return  Hbase instance
+     */
     public static Hbase of(String resource) {
-        return new Hbase(resource);
+        return instances.computeIfAbsent(resource, Hbase::new);
+    }
+
+    /**
+     * Close the connections of all shared instances
+     */
+    public static void closeAll() {
+        instances.values().forEach(hbase -> {
+            try {
+                hbase.closeConnection();
+            } catch (IOException e) {
+                logger.warn("Error closing hbase connection", e);
+            }
+        });
+        instances.clear();
     }
 
     public Configuration configure(String resource) {
@@ -71,16 +133,46 @@ public class Hbase {
         return configuration;
     }
 
-    public Connection getConnection() throws IOException {
-        if (connection == null) {
+    public synchronized Connection getConnection() throws IOException {
+        if ((connection == null) || connection.isClosed()) {
             connection = ConnectionFactory.createConnection(configuration);
         }
         return connection;
     }
 
-    public void closeConnection() throws IOException {
-        connection.close();
-        connection = null;
+    public synchronized Admin getAdmin() throws IOException {
+        if ((admin == null) || admin.isAborted()) {
+            admin = getConnection().getAdmin();
+        }
+        return admin;
+    }
+
+    public synchronized AsyncConnection getAsyncConnection() throws IOException {
+        if ((asyncConnection == null) || asyncConnection.isClosed()) {
+            asyncConnection = await(ConnectionFactory.createAsyncConnection(configuration));
+        }
+        return asyncConnection;
+    }
+
+    public synchronized void closeConnection() throws IOException {
+        try {
+            if (admin != null) {
+                admin.close();
+            }
+        } finally {
+            admin = null;
+            try {
+                if (asyncConnection != null) {
+                    asyncConnection.close();
+                }
+            } finally {
+                asyncConnection = null;
+                if (connection != null) {
+                    connection.close();
+                }
+                connection = null;
+            }
+        }
     }
 
     public TableDescriptor tableDescriptor(String tableName, String columnFamily) {
@@ -89,16 +181,264 @@ public class Hbase {
                 .build();
     }
 
+    /**
+     * Get a table descriptor with the storage encoding of values recorded in its metadata
+     * @param tableName     Name of table
+     * @param columnFamily  Column family
+     * @param encoding      Storage encoding
+     * @return  Table descriptor
+     */
+    public TableDescriptor tableDescriptor(String tableName, String columnFamily, StorageEncoding encoding) {
+        return TableDescriptorBuilder.newBuilder(tableDescriptor(tableName, columnFamily))
+                .setValue(StorageEncoding.METADATA_KEY, encoding.getId())
+                .build();
+    }
+
+    /**
+     * Get a table descriptor with the storage encoding of values and the number of salt buckets of reading row keys
+     * recorded in its metadata
+     * @param tableName     Name of table
+     * @param columnFamily  Column family
+     * @param encoding      Storage encoding
+     * @param saltBuckets   Number of salt buckets, or 0 if unsalted
+     * @return  Table descriptor
+     */
+    public TableDescriptor tableDescriptor(String tableName, String columnFamily, StorageEncoding encoding,
+                                           int saltBuckets) {
+        TableDescriptor descriptor = tableDescriptor(tableName, columnFamily, encoding);
+        if (saltBuckets > 0) {
+            descriptor = TableDescriptorBuilder.newBuilder(descriptor)
+                    .setValue(SALT_METADATA_KEY, Integer.toString(RowKeyCodec.checkSaltBuckets(saltBuckets)))
+                    .build();
+        }
+        return descriptor;
+    }
+
+    /**
+     * Get a table descriptor with the storage encoding of values, the number of salt buckets of reading row keys and
+     * the storage layout of readings recorded in its metadata
+     * @param tableName     Name of table
+     * @param columnFamily  Column family
+     * @param encoding      Storage encoding
+     * @param saltBuckets   Number of salt buckets, or 0 if unsalted
+     * @param layout        Storage layout
+     * @return  Table descriptor
+     */
+    public TableDescriptor tableDescriptor(String tableName, String columnFamily, StorageEncoding encoding,
+                                           int saltBuckets, StorageLayout layout) {
+        TableDescriptor descriptor = tableDescriptor(tableName, columnFamily, encoding, saltBuckets);
+        if (layout.isBlock()) {
+            descriptor = TableDescriptorBuilder.newBuilder(descriptor)
+                    .setValue(StorageLayout.METADATA_KEY, layout.getId())
+                    .build();
+        }
+        return descriptor;
+    }
+
     public void createTable(String tableName, String columnFamily) throws IOException {
-        getConnection().getAdmin().createTable(tableDescriptor(tableName, columnFamily));
+        getAdmin().createTable(tableDescriptor(tableName, columnFamily));
+    }
+
+    /**
+     * Create a table pre-split into regions
+     * @param tableName     Name of table
+     * @param columnFamily  Column family
+     * @param splitKeys     Keys to split regions at, or empty for a single region
+     * @param encoding      Storage encoding of values
+     * @throws IOException
+     */
+    public void createTable(String tableName, String columnFamily, byte[][] splitKeys, StorageEncoding encoding)
+            throws IOException {
+        createTable(tableName, columnFamily, splitKeys, encoding, 0);
+    }
+
+    /**
+     * Create a table pre-split into regions
+     * @param tableName     Name of table
+     * @param columnFamily  Column family
+     * @param splitKeys     Keys to split regions at, or empty for a single region
+     * @param encoding      Storage encoding of values
+     * @param saltBuckets   Number of salt buckets of reading row keys, or 0 if unsalted
+     * @throws IOException
+     */
+    public void createTable(String tableName, String columnFamily, byte[][] splitKeys, StorageEncoding encoding,
+                            int saltBuckets) throws IOException {
+        createTable(tableName, columnFamily, splitKeys, encoding, saltBuckets, StorageLayout.ROW);
+    }
+
+    /**
+     * Create a table pre-split into regions
+     * @param tableName     Name of table
+     * @param columnFamily  Column family
+     * @param splitKeys     Keys to split regions at, or empty for a single region
+     * @param encoding      Storage encoding of values
+     * @param saltBuckets   Number of salt buckets of reading row keys, or 0 if unsalted
+     * @param layout        Storage layout of readings
+     * @throws IOException
+     */
+    public void createTable(String tableName, String columnFamily, byte[][] splitKeys, StorageEncoding encoding,
+                            int saltBuckets, StorageLayout layout) throws IOException {
+        TableDescriptor descriptor = tableDescriptor(tableName, columnFamily, encoding, saltBuckets, layout);
+        if (splitKeys.length == 0) {
+            getAdmin().createTable(descriptor);
+        } else {
+            getAdmin().createTable(descriptor, splitKeys);
+        }
+    }
+
+    /**
+     * Get the storage encoding of values recorded in a table's metadata
+     * @param tableName Name of table
+     * @return  Encoding, string encoding if none recorded
+     * @throws IOException
+     */
+    public StorageEncoding getEncoding(String tableName) throws IOException {
+        return StorageEncoding.of(getAdmin().getDescriptor(TableName.valueOf(tableName)));
+    }
+
+    /**
+     * Get the number of salt buckets of reading row keys recorded in a table's metadata
+     * @param tableName Name of table
+     * @return  Number of salt buckets, 0 if unsalted
+     * @throws IOException
+     */
+    public int getSaltBuckets(String tableName) throws IOException {
+        String buckets = getAdmin().getDescriptor(TableName.valueOf(tableName)).getValue(SALT_METADATA_KEY);
+        return StringUtils.isEmpty(buckets) ? 0 : Integer.parseInt(buckets);
+    }
+
+    /**
+     * Get the size of the store files of a table, after flushing its memstores. The store files are measured on the
+     * filesystem, as the store file sizes reported by the region servers may lag a flush by the report interval.
+     * @param tableName Name of table
+     * @return  Size in bytes
+     * @throws IOException
+     */
+    public long getStorageSize(String tableName) throws IOException {
+        TableName table = TableName.valueOf(tableName);
+        getAdmin().flush(table);    // returns once the memstores are written to store files
+
+        Set<byte[]> families = getAdmin().getDescriptor(table).getColumnFamilyNames();
+        Path tableDir = CommonFSUtils.getTableDir(CommonFSUtils.getRootDir(getConfiguration()), table);
+        FileSystem fs = tableDir.getFileSystem(getConfiguration());
+        long size = 0;
+        for (FileStatus region : fs.listStatus(tableDir)) {
+            if (region.isDirectory() && !region.getPath().getName().startsWith(".")) {  // skip .tabledesc, .tmp
+                for (byte[] family : families) {
+                    Path familyDir = new Path(region.getPath(), Bytes.toString(family));
+                    if (fs.exists(familyDir)) {
+                        size += fs.getContentSummary(familyDir).getLength();
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the storage layout of readings recorded in a table's metadata
+     * @param tableName Name of table
+     * @return  Layout, row layout if none recorded
+     * @throws IOException
+     */
+    public StorageLayout getLayout(String tableName) throws IOException {
+        return StorageLayout.of(getAdmin().getDescriptor(TableName.valueOf(tableName)));
+    }
+
+    /**
+     * Get the range of reading times of a scan of reading rows
+     * @param scan  Scan
+     * @return  Start and exclusive stop epoch seconds, Long.MIN_VALUE/Long.MAX_VALUE if the start/stop row is not a
+     *          reading row key
+     */
+    public static Pair<Long, Long> readingRange(Scan scan) {
+        byte[] start = scan.getStartRow();
+        byte[] stop = scan.getStopRow();
+        long startTs = Long.MIN_VALUE;
+        long stopTs = Long.MAX_VALUE;
+        if ((start.length == RowKeyCodec.ROW_KEY_LENGTH) && RowKeyCodec.isRowKey(start, 0, start.length)) {
+            startTs = RowKeyCodec.decodeRowKey(start);
+            if (!scan.includeStartRow()) {
+                ++startTs;
+            }
+        }
+        if ((stop.length == RowKeyCodec.ROW_KEY_LENGTH) && RowKeyCodec.isRowKey(stop, 0, stop.length)) {
+            stopTs = RowKeyCodec.decodeRowKey(stop);
+            if (scan.includeStopRow()) {
+                ++stopTs;
+            }
+        }
+        return Pair.of(startTs, stopTs);
+    }
+
+    /**
+     * Convert a scan of reading rows to a scan of the blocks containing those readings; readers must skip the readings
+     * of the first and last blocks which are outside the {@link #readingRange(Scan)} of the original scan
+     * @param scan      Scan with reading row key start & stop rows
+     * @param layout    Block storage layout
+     * @return  Block scan
+     * @throws IOException
+     */
+    public static Scan blockScan(Scan scan, StorageLayout layout) throws IOException {
+        Pair<Long, Long> range = readingRange(scan);
+        Scan blockScan = new Scan(scan);
+        if (range.getLeft() != Long.MIN_VALUE) {
+            blockScan.withStartRow(layout.blockKey(range.getLeft()), true);
+        }
+        if (range.getRight() != Long.MAX_VALUE) {
+            blockScan.withStopRow(nextPrefix(layout.blockKey(range.getRight() - 1)), false);
+        }
+        return blockScan;
+    }
+
+    /**
+     * Salt a scan of reading rows, so it reads the rows of its row range in each of the salt buckets
+     * @param scan          Scan with unsalted start & stop rows
+     * @param saltBuckets   Number of salt buckets
+     * @return  Salted scan
+     * @throws IOException
+     */
+    public static Scan saltScan(Scan scan, int saltBuckets) throws IOException {
+        byte[] start = scan.getStartRow();
+        byte[] stop = scan.getStopRow();
+        List<MultiRowRangeFilter.RowRange> ranges = new ArrayList<>(saltBuckets);
+        for (int bucket = 0; bucket < saltBuckets; ++bucket) {
+            ranges.add(new MultiRowRangeFilter.RowRange(
+                    RowKeyCodec.salt(start, bucket), scan.includeStartRow(),
+                    (stop.length > 0) ? RowKeyCodec.salt(stop, bucket) : nextPrefix(RowKeyCodec.salt(stop, bucket)),
+                    (stop.length > 0) && scan.includeStopRow()));
+        }
+        Filter filter = new MultiRowRangeFilter(ranges);
+        if (scan.getFilter() != null) {
+            filter = new FilterList(FilterList.Operator.MUST_PASS_ALL, filter, scan.getFilter());
+        }
+        MultiRowRangeFilter.RowRange last = ranges.get(ranges.size() - 1);
+        return new Scan(scan)
+                .withStartRow(ranges.get(0).getStartRow(), ranges.get(0).isStartRowInclusive())
+                .withStopRow(last.getStopRow(), last.isStopRowInclusive())
+                .setFilter(filter);
+    }
+
+    /**
+     * Get the keys a table's regions are split at
+     * @param tableName Name of table
+     * @return  Split keys, i.e. the start keys of all but the first region
+     * @throws IOException
+     */
+    public byte[][] getSplitKeys(String tableName) throws IOException {
+        byte[][] startKeys;
+        try (RegionLocator locator = getConnection().getRegionLocator(TableName.valueOf(tableName))) {
+            startKeys = locator.getStartKeys();
+        }
+        return (startKeys.length > 1) ? Arrays.copyOfRange(startKeys, 1, startKeys.length) : new byte[0][];
     }
 
     public void disableTable(String tableName) throws IOException {
-        getConnection().getAdmin().disableTable(TableName.valueOf(tableName));
+        getAdmin().disableTable(TableName.valueOf(tableName));
     }
 
     public void deleteTable(String tableName) throws IOException {
-        getConnection().getAdmin().deleteTable(TableName.valueOf(tableName));
+        getAdmin().deleteTable(TableName.valueOf(tableName));
     }
 
     public void removeTable(String tableName) throws IOException {
@@ -106,8 +446,63 @@ public class Hbase {
         deleteTable(tableName);
     }
 
+    /**
+     * Truncate tables, preserving their descriptors and region splits. The tables are truncated concurrently.
+     * @param tableNames    Names of tables to truncate
+     * @throws IOException if truncating any of the tables failed
+     */
+    public void truncateTables(Collection<String> tableNames) throws IOException {
+        AsyncAdmin asyncAdmin = getAsyncConnection().getAdmin();
+        await(CompletableFuture.allOf(tableNames.stream()
+                .map(TableName::valueOf)
+                .map(t -> disableIfEnabled(asyncAdmin, t)
+                        .thenCompose(v -> asyncAdmin.truncateTable(t, true)))
+                .toArray(CompletableFuture[]::new)));
+    }
+
+    /**
+     * Remove tables. The tables are removed concurrently.
+     * @param tableNames    Names of tables to remove
+     * @throws IOException if removing any of the tables failed
+     */
+    public void removeTables(Collection<String> tableNames) throws IOException {
+        AsyncAdmin asyncAdmin = getAsyncConnection().getAdmin();
+        await(CompletableFuture.allOf(tableNames.stream()
+                .map(TableName::valueOf)
+                .map(t -> disableIfEnabled(asyncAdmin, t)
+                        .thenCompose(v -> asyncAdmin.deleteTable(t)))
+                .toArray(CompletableFuture[]::new)));
+    }
+
+    private static CompletableFuture<Void> disableIfEnabled(AsyncAdmin asyncAdmin, TableName table) {
+        return asyncAdmin.isTableEnabled(table)
+                .thenCompose(enabled -> enabled ? asyncAdmin.disableTable(table) : CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Wait for an asynchronous operation to complete
+     * @param future    Operation
+     * @param <T>       Type of result
+     * @return  Result
+     * @throws IOException if the operation failed
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for hbase");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     public List<TableDescriptor> getTables() throws IOException {
-        return getConnection().getAdmin().listTableDescriptors();
+        return getAdmin().listTableDescriptors();
     }
 
     public boolean tableExists(String tableName, String columnFamily) throws IOException {
@@ -147,34 +542,53 @@ public class Hbase {
 
         Map<String, Value> data = Maps.newHashMap();
 
-        Table table = getConnection().getTable(TableName.valueOf(tableName));
-
-        Get get = new Get(Bytes.toBytes(row));
-        Result result = table.get(get);
+        StorageEncoding encoding = getEncoding(tableName);
+        Result result;
+        try (Table table = getConnection().getTable(TableName.valueOf(tableName))) {
+            result = table.get(new Get(Bytes.toBytes(row)));
+        }
 
-        return readValues(result, columns, data);
+        return readValues(result, columns, encoding, data);
     }
 
-    private Map<String, Value> readValues(Result result, Map<String, DataTypes> columns, Map<String, Value> addTo) throws IOException {
+    /**
+     * Read the values of the required columns from a result; numeric values are decoded as per the storage encoding
+     * of the table, while values of string encoded tables are read as stored, i.e. as strings
+     * @param result    Result
+     * @param columns   Required columns and their types
+     * @param encoding  Storage encoding of table
+     * @param addTo     Map to add values to
+     * @return  Map of values
+     * @throws IOException
+     */
+    private Map<String, Value> readValues(Result result, Map<String, DataTypes> columns, StorageEncoding encoding,
+                                          Map<String, Value> addTo) throws IOException {
 
         columns.forEach((name, type) -> {
             byte [] value = result.getValue(FAMILY_BYTES, Bytes.toBytes(name));
-            Value val;
-            switch (type) {
-                case INT:       val = Value.of(Bytes.toInt(value));     break;
-                case LONG:      val = Value.of(Bytes.toLong(value));    break;
-                case FLOAT:     val = Value.of(Bytes.toFloat(value));   break;
-                case DOUBLE:    val = Value.of(Bytes.toDouble(value));  break;
-                default:        val = Value.of(new String(value));      break;
+            if (value != null) {
+                Value val;
+                if (!encoding.isBinary()) {
+                    val = Value.of(new String(value));
+                } else {
+                    switch (type) {
+                        case INT:       val = Value.of(Bytes.toInt(value, 0, value.length));    break;
+                        case LONG:      val = Value.of(Bytes.toLong(value, 0, value.length));   break;
+                        case FLOAT:
+                        case DOUBLE:    val = Value.of(encoding.decode(type, value, 0, value.length));  break;
+                        default:        val = Value.of(new String(value));      break;
+                    }
+                }
+                addTo.put(name, val);
             }
-            addTo.put(name, val);
         });
 
         return addTo;
     }
 
-    private Map<String, Value> readValues(Result result, Map<String, DataTypes> columns) throws IOException {
-        return readValues(result, columns, Maps.newHashMap());
+    private Map<String, Value> readValues(Result result, Map<String, DataTypes> columns, StorageEncoding encoding)
+            throws IOException {
+        return readValues(result, columns, encoding, Maps.newHashMap());
     }
 
     /**
@@ -191,28 +605,19 @@ public class Hbase {
 
         HashBasedTable<String, String, Value> data = HashBasedTable.create();
 
-        Table table = getConnection().getTable(TableName.valueOf(tableName));
+        StorageEncoding encoding = getEncoding(tableName);
+        Pattern pattern = StringUtils.isEmpty(matchRegex) ? null : Pattern.compile(matchRegex);
 
-        ResultScanner scanner = table.getScanner(scan);
+        try (Table table = getConnection().getTable(TableName.valueOf(tableName));
+             ResultScanner scanner = table.getScanner(scan)) {
 
-        scanner.forEach(result -> {
-            try {
+            for (Result result : scanner) {
                 String row = new String(result.getRow());
-                boolean skip = false;
-                if (!StringUtils.isEmpty(matchRegex)) {
-                    // check is required
-                    skip = !row.matches(matchRegex);
-                }
-                if (!skip) {
-                    Map<String, Value> rowValues = readValues(result, columns);
-                    rowValues.forEach((key, val) -> {
-                        data.put(row, key, val);
-                    });
+                if ((pattern == null) || pattern.matcher(row).matches()) {
+                    readValues(result, columns, encoding).forEach((key, val) -> data.put(row, key, val));
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-        });
+        }
 
         return data;
     }
@@ -221,6 +626,152 @@ public class Hbase {
         return read(tableName, scan, columns, "");
     }
 
+    /**
+     * Write puts to a table
+     * @param tableName Name of table
+     * @param puts      Puts to write
+     * @throws IOException
+     */
+    public void put(String tableName, List<Put> puts) throws IOException {
+        try (Table table = getConnection().getTable(TableName.valueOf(tableName))) {
+            table.put(puts);
+        }
+    }
+
+    /**
+     * Add a coprocessor to a table, if not already loaded by the table
+     * @param tableName Name of table
+     * @param className Coprocessor class name
+     * @param jarPath   Path of jar containing the coprocessor, or empty if on the region server classpath
+     * @return  true if added
+     * @throws IOException
+     */
+    public boolean addCoprocessor(String tableName, String className, String jarPath) throws IOException {
+        TableDescriptor descriptor = getAdmin().getDescriptor(TableName.valueOf(tableName));
+        boolean add = !descriptor.hasCoprocessor(className);
+        if (add) {
+            CoprocessorDescriptorBuilder coprocessor = CoprocessorDescriptorBuilder.newBuilder(className);
+            if (!StringUtils.isEmpty(jarPath)) {
+                coprocessor.setJarPath(jarPath);
+            }
+            getAdmin().modifyTable(TableDescriptorBuilder.newBuilder(descriptor)
+                    .setCoprocessor(coprocessor.build())
+                    .build());
+        }
+        return add;
+    }
+
+    /**
+     * Call an endpoint coprocessor on the regions of a table overlapping a row range. The calls are batched per
+     * region server and run in parallel.
+     * @param tableName Name of table
+     * @param endpoint  Endpoint class
+     * @param startRow  Start row, or empty from the first region
+     * @param stopRow   Stop row, or empty to the last region
+     * @param request   Serialised request
+     * @return  Serialised responses of the regions
+     * @throws IOException
+     */
+    public List<byte[]> callEndpoint(String tableName, Class<? extends RegionEndpoint> endpoint,
+                                     byte[] startRow, byte[] stopRow, byte[] request) throws IOException {
+
+        Descriptors.MethodDescriptor method = RegionEndpoint.getMethod(endpoint);
+        Map<byte[], Message> responses;
+        try (Table table = getConnection().getTable(TableName.valueOf(tableName))) {
+            responses = table.batchCoprocessorService(method,
+                    RegionEndpoint.toMessage(method.getInputType(), request), startRow, stopRow,
+                    DynamicMessage.getDefaultInstance(method.getOutputType()));
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("Unable to call " + endpoint.getSimpleName() + " on " + tableName, t);
+        }
+        return responses.values().stream()
+                .map(RegionEndpoint::toBytes)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the first or last row key starting with a prefix
+     * @param tableName Name of table
+     * @param prefix    Row key prefix
+     * @param last      Get last row if true, otherwise first row
+     * @return
+     * @throws IOException
+     */
+    public Optional<byte[]> boundaryRow(String tableName, byte[] prefix, boolean last) throws IOException {
+
+        Scan scan = new Scan()
+                .setLimit(1)
+                .setFilter(new FirstKeyOnlyFilter());
+        if (last) {
+            scan.setReversed(true)
+                    .withStartRow(nextPrefix(prefix), false);
+        } else {
+            scan.withStartRow(prefix);
+        }
+
+        Optional<byte[]> row = Optional.empty();
+        try (Table table = getConnection().getTable(TableName.valueOf(tableName));
+             ResultScanner scanner = table.getScanner(scan)) {
+            Result result = scanner.next();
+            if ((result != null) && Bytes.startsWith(result.getRow(), prefix)) {
+                row = Optional.of(result.getRow());
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Get the first or last reading row key of a table; the boundary rows of each bucket of a salted table are compared
+     * by their unsalted row keys
+     * @param tableName Name of table
+     * @param last      Get last row if true, otherwise first row
+     * @return
+     * @throws IOException
+     */
+    public Optional<byte[]> boundaryReadingRow(String tableName, boolean last) throws IOException {
+        byte[] prefix = Bytes.toBytes(ROWNAME_PREFIX);
+        int saltBuckets = getSaltBuckets(tableName);
+        Optional<byte[]> boundary;
+        if (saltBuckets == 0) {
+            boundary = boundaryRow(tableName, prefix, last);
+        } else {
+            boundary = Optional.empty();
+            for (int bucket = 0; bucket < saltBuckets; ++bucket) {
+                Optional<byte[]> row = boundaryRow(tableName, RowKeyCodec.salt(prefix, bucket), last);
+                if (row.isPresent()) {
+                    if (!boundary.isPresent() || ((compareUnsalted(row.get(), boundary.get()) > 0) == last)) {
+                        boundary = row;
+                    }
+                }
+            }
+        }
+        return boundary;
+    }
+
+    private static int compareUnsalted(byte[] key1, byte[] key2) {
+        int salt = RowKeyCodec.SALT_LENGTH;
+        return Bytes.compareTo(key1, salt, key1.length - salt, key2, salt, key2.length - salt);
+    }
+
+    /**
+     * Get the first row key after all row keys starting with a prefix
+     * @param prefix    Row key prefix
+     * @return
+     */
+    public static byte[] nextPrefix(byte[] prefix) {
+        int length = prefix.length;
+        while ((length > 0) && (prefix[length - 1] == (byte) 0xff)) {
+            --length;   // can't increment 0xff, so drop it & increment preceding byte
+        }
+        byte[] next = Arrays.copyOf(prefix, length);
+        if (length > 0) {
+            ++next[length - 1];
+        }
+        return next;
+    }
+
     /**
      * Convert to byte array of string value to save so easy to read in hbase shell
      * @param value
@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.MethodDescriptorProto;
+import com.google.protobuf.DescriptorProtos.ServiceDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import com.google.protobuf.RpcCallback;
+import com.google.protobuf.RpcController;
+import com.google.protobuf.Service;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.coprocessor.CoprocessorException;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessor;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
+import org.apache.hadoop.hbase.regionserver.Region;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base endpoint coprocessor, exposing a single method which takes a serialised request and returns a serialised
+ * response.
+ * The service is described by a descriptor built at runtime, with a message type of a single bytes field, so endpoints
+ * do not require generated protobuf code; implementations serialise their requests and responses as they see fit.
+ * Endpoints are called on the regions of a table by {@link Hbase#callEndpoint}.
+ */
+public abstract class RegionEndpoint implements RegionCoprocessor, Service {
+
+    private static final String METHOD = "call";
+    private static final String DATA_FIELD = "data";
+
+    private static final Map<Class<?>, Descriptors.ServiceDescriptor> descriptors = new ConcurrentHashMap<>();
+
+    private RegionCoprocessorEnvironment env;
+
+    @Override
+    @SuppressWarnings("rawtypes")   // Coprocessor declares start with a raw environment, so overrides must match it
+    public void start(CoprocessorEnvironment env) throws IOException {
+        if (!(env instanceof RegionCoprocessorEnvironment)) {
+            throw new CoprocessorException("Must be loaded on a table region");
+        }
+        this.env = (RegionCoprocessorEnvironment) env;
+    }
+
+    @Override
+    public Iterable<Service> getServices() {
+        return Collections.singleton(this);
+    }
+
+    /**
+     * Process a request on a region
+     * @param region    Region
+     * @param request   Serialised request
+     * @return  Serialised response
+     * @throws IOException
+     */
+    protected abstract byte[] call(Region region, byte[] request) throws IOException;
+
+    @Override
+    public Descriptors.ServiceDescriptor getDescriptorForType() {
+        return getDescriptor(getClass());
+    }
+
+    @Override
+    public void callMethod(Descriptors.MethodDescriptor method, RpcController controller, Message request,
+                           RpcCallback<Message> done) {
+        Message response = null;
+        try {
+            response = toMessage(method.getOutputType(), call(env.getRegion(), toBytes(request)));
+        } catch (IOException e) {
+            CoprocessorRpcUtils.setControllerException(controller, e);
+        }
+        done.run(response);
+    }
+
+    @Override
+    public Message getRequestPrototype(Descriptors.MethodDescriptor method) {
+        return DynamicMessage.getDefaultInstance(method.getInputType());
+    }
+
+    @Override
+    public Message getResponsePrototype(Descriptors.MethodDescriptor method) {
+        return DynamicMessage.getDefaultInstance(method.getOutputType());
+    }
+
+    /**
+     * Get the service descriptor of an endpoint; the service is named after the endpoint class
+     * @param endpoint  Endpoint class
+     * @return  Service descriptor
+     */
+    public static Descriptors.ServiceDescriptor getDescriptor(Class<? extends RegionEndpoint> endpoint) {
+        return descriptors.computeIfAbsent(endpoint, cls -> {
+            String pkg = cls.getPackage().getName();
+            String name = cls.getSimpleName();
+            String payload = name + "Payload";
+            FileDescriptorProto file = FileDescriptorProto.newBuilder()
+                    .setName(cls.getName().replace('.', '/') + ".proto")
+                    .setPackage(pkg)
+                    .addMessageType(DescriptorProto.newBuilder()
+                            .setName(payload)
+                            .addField(FieldDescriptorProto.newBuilder()
+                                    .setName(DATA_FIELD)
+                                    .setNumber(1)
+                                    .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL)
+                                    .setType(FieldDescriptorProto.Type.TYPE_BYTES)))
+                    .addService(ServiceDescriptorProto.newBuilder()
+                            .setName(name)
+                            .addMethod(MethodDescriptorProto.newBuilder()
+                                    .setName(METHOD)
+                                    .setInputType("." + pkg + "." + payload)
+                                    .setOutputType("." + pkg + "." + payload)))
+                    .build();
+            try {
+                return Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0])
+                        .findServiceByName(name);
+            } catch (Descriptors.DescriptorValidationException e) {
+                throw new IllegalStateException("Invalid service descriptor for " + cls.getName(), e);
+            }
+        });
+    }
+
+    /**
+     * Get the method descriptor of an endpoint
+     * @param endpoint  Endpoint class
+     * @return  Method descriptor
+     */
+    public static Descriptors.MethodDescriptor getMethod(Class<? extends RegionEndpoint> endpoint) {
+        return getDescriptor(endpoint).findMethodByName(METHOD);
+    }
+
+    /**
+     * Wrap serialised data in a message
+     * @param type  Message type
+     * @param data  Serialised data
+     * @return  Message
+     */
+    public static Message toMessage(Descriptors.Descriptor type, byte[] data) {
+        return DynamicMessage.newBuilder(type)
+                .setField(type.findFieldByName(DATA_FIELD), ByteString.copyFrom(data))
+                .build();
+    }
+
+    /**
+     * Unwrap the serialised data in a message
+     * @param message   Message
+     * @return  Serialised data
+     */
+    public static byte[] toBytes(Message message) {
+        Descriptors.FieldDescriptor field = message.getDescriptorForType().findFieldByName(DATA_FIELD);
+        return ((ByteString) message.getField(field)).toByteArray();
+    }
+}
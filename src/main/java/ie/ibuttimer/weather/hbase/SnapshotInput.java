@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import ie.ibuttimer.weather.misc.AppLogger;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.TableSnapshotScanner;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.mapreduce.Job;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Read the input of a job from a snapshot of the input table.
+ * A snapshot of the table is taken and the job's mappers read its HFiles directly from the filesystem, rather than
+ * scanning the table through the region servers. Once the job completes, the snapshot and the restore directory are
+ * removed.
+ * The snapshot may also be scanned by the driver, so that anything the driver reads from the input, e.g. the column
+ * dictionary, matches what the mappers read.
+ */
+public class SnapshotInput implements ScanSource {
+
+    private final Hbase hbase;
+    private final String snapshot;
+    private final Path restoreDir;
+
+    private SnapshotInput(Hbase hbase, String snapshot, Path restoreDir) {
+        this.hbase = hbase;
+        this.snapshot = snapshot;
+        this.restoreDir = restoreDir;
+    }
+
+    /**
+     * Snapshot the input table of a job, and initialise the job's mapper to read from the snapshot
+     * @param hbase             Hbase instance
+     * @param table             Input table
+     * @param scan              Scan instance to control CF and attribute selection
+     * @param mapper            Mapper class
+     * @param outputKeyClass    Mapper output key class
+     * @param outputValueClass  Mapper output value class
+     * @param job               Job
+     * @param restoreRoot       Root of restore directories; must be on the same filesystem as the hbase root
+     *                          directory, but not under it
+     * @return  Snapshot input
+     * @throws IOException
+     */
+    public static SnapshotInput of(Hbase hbase, String table, Scan scan, Class<? extends TableMapper<?, ?>> mapper,
+                                   Class<?> outputKeyClass, Class<?> outputValueClass,
+                                   Job job, String restoreRoot) throws IOException {
+
+        String snapshot = table.replace(TableName.NAMESPACE_DELIM, '_') + "_" +
+                Long.toString(System.currentTimeMillis(), 36);
+        Path restoreDir = new Path(restoreRoot, snapshot);
+
+        hbase.getAdmin().snapshot(snapshot, TableName.valueOf(table));
+        try {
+            TableMapReduceUtil.initTableSnapshotMapperJob(snapshot, scan, mapper, outputKeyClass, outputValueClass,
+                    job, true, restoreDir);
+        } catch (IOException e) {
+            hbase.getAdmin().deleteSnapshot(snapshot);
+            throw e;
+        }
+        return new SnapshotInput(hbase, snapshot, restoreDir);
+    }
+
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get a client side scanner of the snapshot.
+     * Regions are scanned in start key order, so reversed scans are not supported across regions.
+     * @param scan  Scan
+     * @return  Scanner
+     * @throws IOException
+     */
+    @Override
+    public ResultScanner getScanner(Scan scan) throws IOException {
+        // restored to its own directory under the job's restore directory, which the scanner removes on close
+        return new TableSnapshotScanner(hbase.getConfiguration(),
+                new Path(restoreDir, "scan_" + UUID.randomUUID().toString()), snapshot, scan);
+    }
+
+    @Override
+    public boolean isReversible() {
+        return false;
+    }
+
+    /**
+     * Remove the snapshot and the restore directory
+     * @param logger    Logger
+     */
+    public void cleanup(AppLogger logger) {
+        try {
+            FileSystem fs = restoreDir.getFileSystem(hbase.getConfiguration());
+            fs.delete(restoreDir, true);
+        } catch (IOException e) {
+            logger.warn("Unable to delete snapshot restore directory " + restoreDir, e);
+        }
+        try {
+            hbase.getAdmin().deleteSnapshot(snapshot);
+        } catch (IOException e) {
+            logger.warn("Unable to delete snapshot " + snapshot, e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import ie.ibuttimer.weather.misc.DataTypes;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Encoding of the numeric values stored in a table.
+ * String encoding stores the string representation of values, so they are easy to read in the hbase shell, while the
+ * binary encodings store 4-byte float or 8-byte double values, avoiding formatting and parsing and roughly halving the
+ * size of cells. Integral values are stored as 4-byte int or 8-byte long values by the binary encodings.
+ * The encoding of a table is recorded in its metadata.
+ */
+public enum StorageEncoding {
+    STRING(DataTypes.STRING), FLOAT(DataTypes.FLOAT), DOUBLE(DataTypes.DOUBLE);
+
+    /** Table metadata key for the storage encoding */
+    public static final String METADATA_KEY = "weather.storage_encoding";
+
+    private final DataTypes type;
+
+    StorageEncoding(DataTypes type) {
+        this.type = type;
+    }
+
+    /**
+     * Get the encoding corresponding to a type id
+     * @param id    Type id, i.e. 'str', 'flt', 'dbl' or 'string', 'float', 'double'
+     * @return  Encoding
+     * @throws IllegalArgumentException if not a valid encoding
+     */
+    public static StorageEncoding of(String id) {
+        DataTypes type = DataTypes.of(id.trim().toLowerCase());
+        for (StorageEncoding encoding : values()) {
+            if (encoding.type == type) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage encoding: " + id);
+    }
+
+    /**
+     * Get the encoding set in a configuration
+     * @param conf  Configuration
+     * @param key   Configuration key
+     * @return  Encoding, or string encoding if not set
+     */
+    public static StorageEncoding of(Configuration conf, String key) {
+        return of(conf.get(key, STRING.getId()));
+    }
+
+    /**
+     * Get the encoding recorded in a table's metadata
+     * @param descriptor    Table descriptor
+     * @return  Encoding, or string encoding if none recorded
+     */
+    public static StorageEncoding of(TableDescriptor descriptor) {
+        String id = descriptor.getValue(METADATA_KEY);
+        return (id == null) ? STRING : of(id);
+    }
+
+    /**
+     * Get the type of the values of a column in the tables generated by the jobs; dates, model parameters and partial
+     * results are stored as is, counts as integral values, and everything else as floating point values
+     * @param column    Column name
+     * @return  Type, string for values stored as is
+     */
+    public static DataTypes getColumnType(String column) {
+        DataTypes type;
+        if (column.equals(DATE_COL) || column.equals(PARAMS) || column.startsWith(MIN_TS) || column.startsWith(MAX_TS) ||
+                column.equals(SLICE_PARTIAL_COL)) {
+            type = DataTypes.STRING;
+        } else if (column.startsWith(COUNT)) {
+            type = DataTypes.LONG;
+        } else {
+            type = DataTypes.DOUBLE;
+        }
+        return type;
+    }
+
+    /**
+     * Get the type decoded floating point values are stored as
+     * @return  Type
+     */
+    public DataTypes getType() {
+        return type;
+    }
+
+    /**
+     * Get the id to record the encoding with
+     * @return  Id
+     */
+    public String getId() {
+        return type.longId();
+    }
+
+    public boolean isBinary() {
+        return (this != STRING);
+    }
+
+    public byte[] encode(int value) {
+        return isBinary() ? Bytes.toBytes(value) : Hbase.storeValueAsString(value);
+    }
+
+    public byte[] encode(long value) {
+        return isBinary() ? Bytes.toBytes(value) : Hbase.storeValueAsString(value);
+    }
+
+    public byte[] encode(float value) {
+        byte[] bytes;
+        switch (this) {
+            case FLOAT:     bytes = Bytes.toBytes(value);           break;
+            case DOUBLE:    bytes = Bytes.toBytes((double) value);  break;
+            default:        bytes = Hbase.storeValueAsString(value); break;
+        }
+        return bytes;
+    }
+
+    public byte[] encode(double value) {
+        byte[] bytes;
+        switch (this) {
+            case FLOAT:     bytes = Bytes.toBytes((float) value);   break;
+            case DOUBLE:    bytes = Bytes.toBytes(value);           break;
+            default:        bytes = Hbase.storeValueAsString(value); break;
+        }
+        return bytes;
+    }
+
+    /**
+     * Decode a value
+     * @param type      Type of value; integral types are decoded as such, while floating point types are decoded as
+     *                  stored by this encoding
+     * @param buffer    Buffer containing value
+     * @param offset    Offset of value in buffer
+     * @param length    Length of value
+     * @return  Value
+     * @throws NumberFormatException if a string encoded value is not a valid number, or a binary value is not the
+     *                                  size of its type
+     */
+    public double decode(DataTypes type, byte[] buffer, int offset, int length) {
+        DataTypes stored;
+        if (!isBinary()) {
+            stored = DataTypes.STRING;
+        } else if ((type == DataTypes.INT) || (type == DataTypes.LONG)) {
+            stored = type;
+        } else {
+            stored = this.type;
+        }
+        return TypeMap.decodeDouble(stored, buffer, offset, length);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.hbase;
+
+import ie.ibuttimer.weather.misc.RowKeyCodec;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+
+import java.util.Arrays;
+
+import static ie.ibuttimer.weather.misc.Utils.ROWNAME_PREFIX;
+
+/**
+ * Layout of the readings stored in a table.
+ * The row layout stores a row per reading time, 'r-yyyyMMddHH', with a cell per column. The block layouts store a row
+ * per day, 'r-yyyyMMdd', or month, 'r-yyyyMM', with a cell per column holding the readings of the column in the
+ * period compressed by {@link BlockCodec}, so the per cell overhead of the row key, family, qualifier and timestamp is
+ * paid once per block rather than once per reading. Block row keys are the reading row keys truncated to the period,
+ * so they sort like reading row keys, after any stats rows. Block tables have float values, are not salted and have
+ * no date column.
+ * The layout of a table is recorded in its metadata.
+ */
+public enum StorageLayout {
+    ROW("row", RowKeyCodec.ROW_KEY_LENGTH),
+    DAY("day", ROWNAME_PREFIX.length() + 8),
+    MONTH("month", ROWNAME_PREFIX.length() + 6);
+
+    /** Table metadata key for the storage layout */
+    public static final String METADATA_KEY = "weather.storage_layout";
+
+    private static final long SEC_PER_DAY = 24 * 60 * 60;
+
+    private final String id;
+    private final int keyLength;
+
+    StorageLayout(String id, int keyLength) {
+        this.id = id;
+        this.keyLength = keyLength;
+    }
+
+    /**
+     * Get the layout corresponding to an id
+     * @param id    Id, i.e. 'row', 'day' or 'month'
+     * @return  Layout
+     * @throws IllegalArgumentException if not a valid layout
+     */
+    public static StorageLayout of(String id) {
+        String layoutId = id.trim().toLowerCase();
+        for (StorageLayout layout : values()) {
+            if (layout.id.equals(layoutId)) {
+                return layout;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage layout: " + id);
+    }
+
+    /**
+     * Get the layout set in a configuration
+     * @param conf  Configuration
+     * @param key   Configuration key
+     * @return  Layout, or row layout if not set
+     */
+    public static StorageLayout of(Configuration conf, String key) {
+        return of(conf.get(key, ROW.getId()));
+    }
+
+    /**
+     * Get the layout recorded in a table's metadata
+     * @param descriptor    Table descriptor
+     * @return  Layout, or row layout if none recorded
+     */
+    public static StorageLayout of(TableDescriptor descriptor) {
+        String id = descriptor.getValue(METADATA_KEY);
+        return (id == null) ? ROW : of(id);
+    }
+
+    /**
+     * Get the id to record the layout with
+     * @return  Id
+     */
+    public String getId() {
+        return id;
+    }
+
+    public boolean isBlock() {
+        return (this != ROW);
+    }
+
+    /**
+     * Get the row key of the block containing a reading
+     * @param timestamp Epoch seconds
+     * @return  New row key
+     */
+    public byte[] blockKey(long timestamp) {
+        return Arrays.copyOf(RowKeyCodec.rowKey(timestamp), keyLength);
+    }
+
+    /**
+     * Check if a row key is a block row key of this layout
+     * @param buffer    Buffer containing row key
+     * @param offset    Offset of row key
+     * @param length    Length of row key
+     * @return
+     */
+    public boolean isBlockKey(byte[] buffer, int offset, int length) {
+        return (length == keyLength) && RowKeyCodec.isRowKey(expand(buffer, offset, length), 0,
+                RowKeyCodec.ROW_KEY_LENGTH);
+    }
+
+    /**
+     * Decode the start of the block of a block row key
+     * @param buffer    Buffer containing row key
+     * @param offset    Offset of row key
+     * @param length    Length of row key
+     * @return  Epoch seconds
+     * @throws IllegalArgumentException if not a valid block row key
+     */
+    public long blockStart(byte[] buffer, int offset, int length) {
+        if (length != keyLength) {
+            throw new IllegalArgumentException(String.format("Invalid %s block row key: %s", id,
+                    new String(buffer, offset, length)));
+        }
+        return RowKeyCodec.decodeRowKey(expand(buffer, offset, length));
+    }
+
+    public long blockStart(byte[] rowKey) {
+        return blockStart(rowKey, 0, rowKey.length);
+    }
+
+    /**
+     * Get the exclusive end of a block
+     * @param blockStart    Start of block in epoch seconds
+     * @return  Epoch seconds of the start of the following block
+     */
+    public long blockStop(long blockStart) {
+        long stop;
+        switch (this) {
+            case DAY:   stop = blockStart + SEC_PER_DAY;                                break;
+            case MONTH: stop = blockStart(blockKey(blockStart + (31 * SEC_PER_DAY)));   break;
+            default:    throw new UnsupportedOperationException("Row layout has no blocks");
+        }
+        return stop;
+    }
+
+    /**
+     * Expand a block row key to the reading row key of the start of the block
+     */
+    private static byte[] expand(byte[] buffer, int offset, int length) {
+        byte[] rowKey = new byte[RowKeyCodec.ROW_KEY_LENGTH];
+        System.arraycopy(buffer, offset, rowKey, 0, length);
+        for (int i = length; i < rowKey.length; ++i) {
+            // first day of month and hour of day
+            rowKey[i] = (byte) ((i == RowKeyCodec.ROW_KEY_LENGTH - 3) ? '1' : '0');
+        }
+        return rowKey;
+    }
+}
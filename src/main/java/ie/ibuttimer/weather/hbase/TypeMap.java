@@ -25,14 +25,18 @@ package ie.ibuttimer.weather.hbase;
 
 import com.google.common.collect.Maps;
 import ie.ibuttimer.weather.misc.DataTypes;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class TypeMap {
 
@@ -40,10 +44,24 @@ public class TypeMap {
 
     private Map<String, DataTypes> map;
 
+    private final List<Pair<Pattern, DataTypes>> compiled;     // compiled key regexs in map order
+
+    private final Map<String, Optional<DataTypes>> resolved;   // resolved types by key
+
     public static final TypeMap STRING_MAPPER = of("str(.*)");
 
+    private static final int MAX_FAST_DIGITS = 15;     // max digits exactly representable as a double mantissa
+    private static final double[] POWERS_OF_TEN = {    // powers of ten exactly representable as a double
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     private TypeMap(String mapString) {
         this.map = decodeMap(mapString);
+        this.compiled = this.map.entrySet().stream()
+                .map(e -> Pair.of(Pattern.compile(e.getKey()), e.getValue()))
+                .collect(Collectors.toList());
+        this.resolved = new ConcurrentHashMap<>();
     }
 
     public static TypeMap of() {
@@ -55,7 +73,7 @@ public class TypeMap {
     }
 
     public Map<String, DataTypes> decodeMap(String mapString) {
-        Map<String, DataTypes> map = Maps.newHashMap();
+        Map<String, DataTypes> map = Maps.newLinkedHashMap();
 
         Arrays.asList(mapString.split(",")).forEach(spec -> {
             Matcher matcher = pattern.matcher(spec.trim());
@@ -67,13 +85,138 @@ public class TypeMap {
     }
 
     public Optional<Object> decode(String key, Object value) {
-        AtomicReference<Optional<Object>> result = new AtomicReference<>(Optional.empty());
-        map.entrySet().stream()
-                .filter(e -> key.matches(e.getKey()))
-                .findFirst()
-                .ifPresent(e -> result.set(
-                        Optional.of(decode(e.getValue(), value))));
-        return result.get();
+        return getType(key).map(type -> decode(type, value));
+    }
+
+    /**
+     * Get the type mapped to a key
+     * @param key   Key
+     * @return  Type or empty if no mapping for key
+     */
+    public Optional<DataTypes> getType(String key) {
+        Optional<DataTypes> type = resolved.get(key);
+        if (type == null) {
+            type = compiled.stream()
+                    .filter(e -> e.getLeft().matcher(key).matches())
+                    .findFirst()
+                    .map(Pair::getRight);
+            resolved.put(key, type);
+        }
+        return type;
+    }
+
+    /**
+     * Decode a numeric value without boxing, or creating a string for string representations of simple decimal
+     * numbers, e.g. '-12.75'
+     * @param type      Type of value
+     * @param buffer    Buffer containing value
+     * @param offset    Offset of value in buffer
+     * @param length    Length of value
+     * @return  Value
+     * @throws NumberFormatException if a string representation is not a valid number, or a binary value is not the
+     *                                  size of its type
+     * @throws IllegalArgumentException if type is not numeric
+     */
+    public static double decodeDouble(DataTypes type, byte[] buffer, int offset, int length) {
+        double result;
+        switch (type) {
+            case INT:
+                checkLength(type, length, Bytes.SIZEOF_INT);
+                result = Bytes.toInt(buffer, offset, length);
+                break;
+            case LONG:
+                checkLength(type, length, Bytes.SIZEOF_LONG);
+                result = Bytes.toLong(buffer, offset, length);
+                break;
+            case FLOAT:
+                checkLength(type, length, Bytes.SIZEOF_FLOAT);
+                result = Bytes.toFloat(buffer, offset);
+                break;
+            case DOUBLE:
+                checkLength(type, length, Bytes.SIZEOF_DOUBLE);
+                result = Bytes.toDouble(buffer, offset);
+                break;
+            case STRING:
+                result = parseDouble(buffer, offset, length);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a numeric type: " + type);
+        }
+        return result;
+    }
+
+    /**
+     * Check the length of a binary value
+     * @param type      Type of value
+     * @param length    Length of value
+     * @param expected  Size of type
+     * @throws NumberFormatException if the length is not the size of the type
+     */
+    private static void checkLength(DataTypes type, int length, int expected) {
+        if (length != expected) {
+            throw new NumberFormatException(String.format("Invalid length for %s value, %d bytes rather than %d",
+                    type, length, expected));
+        }
+    }
+
+    /**
+     * Parse the string representation of a number.
+     * Simple decimals of up to 15 significant digits are parsed directly; both the mantissa and power of ten are
+     * exactly representable as doubles, so the division is correctly rounded. Casting the result to float matches
+     * Float.parseFloat for the short decimals found in the weather data, e.g. '12.3', but is not guaranteed to in
+     * general, as rounding to double then to float may differ from rounding directly to float.
+     * Anything else falls back to Double.parseDouble.
+     * @param buffer    Buffer containing value
+     * @param offset    Offset of value in buffer
+     * @param length    Length of value
+     * @return  Value
+     * @throws NumberFormatException if not a valid number
+     */
+    public static double parseDouble(byte[] buffer, int offset, int length) {
+        int idx = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if ((idx < end) && ((buffer[idx] == '-') || (buffer[idx] == '+'))) {
+            negative = (buffer[idx] == '-');
+            ++idx;
+        }
+        long mantissa = 0;
+        int digits = 0;         // significant digits
+        int fraction = -1;      // digits after decimal point, -1 if no decimal point
+        boolean any = false;    // any digits
+        boolean fast = true;
+        for (; idx < end && fast; ++idx) {
+            byte b = buffer[idx];
+            if ((b >= '0') && (b <= '9')) {
+                any = true;
+                if ((mantissa > 0) || (b != '0')) {
+                    ++digits;
+                }
+                mantissa = (mantissa * 10) + (b - '0');
+                if (fraction >= 0) {
+                    ++fraction;
+                }
+                fast = (digits <= MAX_FAST_DIGITS);
+            } else if ((b == '.') && (fraction < 0)) {
+                fraction = 0;
+            } else {
+                fast = false;
+            }
+        }
+
+        double result;
+        if (fast && any && (fraction < POWERS_OF_TEN.length)) {
+            result = mantissa;
+            if (fraction > 0) {
+                result /= POWERS_OF_TEN[fraction];
+            }
+            if (negative) {
+                result = -result;
+            }
+        } else {
+            result = Double.parseDouble(new String(buffer, offset, length, StandardCharsets.US_ASCII));
+        }
+        return result;
     }
 
     public static Object decode(DataTypes type, Object value) {
@@ -85,6 +228,7 @@ public class TypeMap {
                 if (isStr) {
                     result = Integer.parseInt((String)value);
                 } else if (isBytes) {
+                    checkLength(type, ((byte[])value).length, Bytes.SIZEOF_INT);
                     result = Bytes.toInt((byte[])value);
                 }
                 break;
@@ -92,6 +236,7 @@ public class TypeMap {
                 if (isStr) {
                     result = Long.parseLong((String)value);
                 } else if (isBytes) {
+                    checkLength(type, ((byte[])value).length, Bytes.SIZEOF_LONG);
                     result = Bytes.toLong((byte[])value);
                 }
                 break;
@@ -99,6 +244,7 @@ public class TypeMap {
                 if (isStr) {
                     result = Float.parseFloat((String)value);
                 } else if (isBytes) {
+                    checkLength(type, ((byte[])value).length, Bytes.SIZEOF_FLOAT);
                     result = Bytes.toFloat((byte[])value);
                 }
                 break;
@@ -106,6 +252,7 @@ public class TypeMap {
                 if (isStr) {
                     result = Double.parseDouble((String)value);
                 } else if (isBytes) {
+                    checkLength(type, ((byte[])value).length, Bytes.SIZEOF_DOUBLE);
                     result = Bytes.toDouble((byte[])value);
                 }
                 break;
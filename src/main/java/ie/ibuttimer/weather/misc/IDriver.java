@@ -29,4 +29,10 @@ import java.io.IOException;
 public interface IDriver {
 
     int runJob(Configuration config, JobConfig jobCfg) throws IOException, ClassNotFoundException, InterruptedException;
+
+    /**
+     * Release any resources held by the driver once it has run, whether or not it completed
+     */
+    default void cleanup() {
+    }
 }
@@ -0,0 +1,370 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.misc;
+
+import java.nio.charset.StandardCharsets;
+
+import static ie.ibuttimer.weather.misc.Utils.ROWNAME_PREFIX;
+
+/**
+ * Codec for 'r-yyyyMMddHH' row keys and 'yyyy-MM-dd HH:mm:ss' date column values, converting directly to and from UTC
+ * epoch seconds using integer arithmetic rather than java.time parsing and formatting.
+ *
+ * Row keys may be salted with a 2 digit bucket prefix, i.e. 'bbr-yyyyMMddHH', where the bucket is the hour of the
+ * reading modulo the number of buckets. Consecutive readings are spread across the buckets, so writes of a time ordered
+ * series are spread across the regions of a table split at the bucket boundaries, rather than all going to the tail
+ * region. Salted keys sort after stats rows, like unsalted keys.
+ *
+ * Civil date conversions are based on
+ * http://howardhinnant.github.io/date_algorithms.html
+ *
+ * Instance encode methods write into a buffer which is reused by the next call, so the result must be consumed (e.g.
+ * copied by a Put) before the next call. Instances are not thread safe.
+ */
+public class RowKeyCodec {
+
+    public static final int ROW_KEY_LENGTH = ROWNAME_PREFIX.length() + 10;    // r-yyyyMMddHH
+    public static final int DATE_TIME_LENGTH = 19;                            // yyyy-MM-dd HH:mm:ss
+    public static final int SALT_LENGTH = 2;                                  // bb
+    public static final int MAX_SALT_BUCKETS = 100;
+
+    private static final byte[] PREFIX = ROWNAME_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private static final long SEC_PER_DAY = 24 * 60 * 60;
+    private static final long SEC_PER_HR = 60 * 60;
+
+    private final int saltBuckets;
+    private final byte[] rowKey;
+    private final byte[] dateTime = new byte[DATE_TIME_LENGTH];
+
+    public RowKeyCodec() {
+        this(0);
+    }
+
+    /**
+     * Constructor
+     * @param saltBuckets   Number of salt buckets, or 0 for unsalted row keys
+     */
+    public RowKeyCodec(int saltBuckets) {
+        this.saltBuckets = checkSaltBuckets(saltBuckets);
+        this.rowKey = new byte[keyLength(saltBuckets)];
+        System.arraycopy(PREFIX, 0, rowKey, saltLength(saltBuckets), PREFIX.length);
+    }
+
+    /**
+     * Encode a row key
+     * @param timestamp Epoch seconds
+     * @return  Reused buffer containing the row key
+     */
+    public byte[] encodeRowKey(long timestamp) {
+        int offset = 0;
+        if (saltBuckets > 0) {
+            writeDigits(saltBucket(timestamp, saltBuckets), rowKey, 0, SALT_LENGTH);
+            offset = SALT_LENGTH;
+        }
+        writeRowKey(timestamp, rowKey, offset + PREFIX.length);
+        return rowKey;
+    }
+
+    /**
+     * Encode a date column value
+     * @param timestamp Epoch seconds
+     * @return  Reused buffer containing the date time
+     */
+    public byte[] encodeDateTime(long timestamp) {
+        writeDateTime(timestamp, dateTime, 0);
+        return dateTime;
+    }
+
+    /**
+     * Generate a row key
+     * @param timestamp Epoch seconds
+     * @return  New row key
+     */
+    public static byte[] rowKey(long timestamp) {
+        byte[] key = new byte[ROW_KEY_LENGTH];
+        System.arraycopy(PREFIX, 0, key, 0, PREFIX.length);
+        writeRowKey(timestamp, key, PREFIX.length);
+        return key;
+    }
+
+    /**
+     * Generate a row key
+     * @param timestamp     Epoch seconds
+     * @param saltBuckets   Number of salt buckets, or 0 for an unsalted row key
+     * @return  New row key
+     */
+    public static byte[] rowKey(long timestamp, int saltBuckets) {
+        return (saltBuckets > 0) ? salt(rowKey(timestamp), saltBucket(timestamp, saltBuckets)) : rowKey(timestamp);
+    }
+
+    /**
+     * Get the salt bucket of a reading
+     * @param timestamp     Epoch seconds
+     * @param saltBuckets   Number of salt buckets
+     * @return  Bucket
+     */
+    public static int saltBucket(long timestamp, int saltBuckets) {
+        return (int) Math.floorMod(Math.floorDiv(timestamp, SEC_PER_HR), (long) saltBuckets);
+    }
+
+    /**
+     * Prefix a key with a salt bucket
+     * @param key       Unsalted key, or prefix of one
+     * @param bucket    Salt bucket
+     * @return  New salted key
+     */
+    public static byte[] salt(byte[] key, int bucket) {
+        byte[] salted = new byte[SALT_LENGTH + key.length];
+        writeDigits(bucket, salted, 0, SALT_LENGTH);
+        System.arraycopy(key, 0, salted, SALT_LENGTH, key.length);
+        return salted;
+    }
+
+    /**
+     * Check a number of salt buckets is valid
+     * @param saltBuckets   Number of salt buckets
+     * @return  Number of salt buckets
+     * @throws IllegalArgumentException if not valid
+     */
+    public static int checkSaltBuckets(int saltBuckets) {
+        if ((saltBuckets < 0) || (saltBuckets > MAX_SALT_BUCKETS)) {
+            throw new IllegalArgumentException(String.format("Invalid number of salt buckets %d, maximum is %d",
+                    saltBuckets, MAX_SALT_BUCKETS));
+        }
+        return saltBuckets;
+    }
+
+    private static int saltLength(int saltBuckets) {
+        return (saltBuckets > 0) ? SALT_LENGTH : 0;
+    }
+
+    private static int keyLength(int saltBuckets) {
+        return saltLength(saltBuckets) + ROW_KEY_LENGTH;
+    }
+
+    /**
+     * Generate a row name
+     * @param timestamp Epoch seconds
+     * @return  Row name
+     */
+    public static String rowName(long timestamp) {
+        return new String(rowKey(timestamp), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Format a date time
+     * @param timestamp Epoch seconds
+     * @return  Date time in the form 'yyyy-MM-dd HH:mm:ss'
+     */
+    public static String dateTime(long timestamp) {
+        byte[] buffer = new byte[DATE_TIME_LENGTH];
+        writeDateTime(timestamp, buffer, 0);
+        return new String(buffer, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Check if a row key is a reading row key, i.e. starts with the row name prefix, optionally salted
+     * @param buffer    Buffer containing row key
+     * @param offset    Offset of row key
+     * @param length    Length of row key
+     * @return
+     */
+    public static boolean isRowKey(byte[] buffer, int offset, int length) {
+        int saltLength = saltLength(buffer, offset, length);
+        if (saltLength < 0) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (buffer[offset + saltLength + i] != PREFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the length of the salt of a row key
+     * @return  salt length, or -1 if not a valid row key length
+     */
+    private static int saltLength(byte[] buffer, int offset, int length) {
+        int saltLength;
+        if (length == ROW_KEY_LENGTH) {
+            saltLength = 0;
+        } else if ((length == ROW_KEY_LENGTH + SALT_LENGTH) && (digits(buffer, offset, SALT_LENGTH) >= 0)) {
+            saltLength = SALT_LENGTH;
+        } else {
+            saltLength = -1;
+        }
+        return saltLength;
+    }
+
+    /**
+     * Decode a row key, salted or unsalted
+     * @param buffer    Buffer containing row key
+     * @param offset    Offset of row key
+     * @param length    Length of row key
+     * @return  Epoch seconds
+     * @throws IllegalArgumentException if not a valid row key
+     */
+    public static long decodeRowKey(byte[] buffer, int offset, int length) {
+        if (!isRowKey(buffer, offset, length)) {
+            throw invalid("row key", buffer, offset, length);
+        }
+        int idx = offset + saltLength(buffer, offset, length) + PREFIX.length;
+        int year = digits(buffer, idx, 4);
+        int month = digits(buffer, idx + 4, 2);
+        int day = digits(buffer, idx + 6, 2);
+        int hour = digits(buffer, idx + 8, 2);
+        if ((year | month | day | hour) < 0 || !isValid(month, day, hour, 0, 0)) {
+            throw invalid("row key", buffer, offset, length);
+        }
+        return toEpochSecond(year, month, day, hour, 0, 0);
+    }
+
+    public static long decodeRowKey(byte[] rowKey) {
+        return decodeRowKey(rowKey, 0, rowKey.length);
+    }
+
+    /**
+     * Decode a date column value
+     * @param buffer    Buffer containing date time
+     * @param offset    Offset of date time
+     * @param length    Length of date time
+     * @return  Epoch seconds
+     * @throws IllegalArgumentException if not a valid date time
+     */
+    public static long decodeDateTime(byte[] buffer, int offset, int length) {
+        if ((length != DATE_TIME_LENGTH) ||
+                (buffer[offset + 4] != '-') || (buffer[offset + 7] != '-') || (buffer[offset + 10] != ' ') ||
+                (buffer[offset + 13] != ':') || (buffer[offset + 16] != ':')) {
+            throw invalid("date time", buffer, offset, length);
+        }
+        int year = digits(buffer, offset, 4);
+        int month = digits(buffer, offset + 5, 2);
+        int day = digits(buffer, offset + 8, 2);
+        int hour = digits(buffer, offset + 11, 2);
+        int minute = digits(buffer, offset + 14, 2);
+        int second = digits(buffer, offset + 17, 2);
+        if ((year | month | day | hour | minute | second) < 0 || !isValid(month, day, hour, minute, second)) {
+            throw invalid("date time", buffer, offset, length);
+        }
+        return toEpochSecond(year, month, day, hour, minute, second);
+    }
+
+    private static IllegalArgumentException invalid(String type, byte[] buffer, int offset, int length) {
+        return new IllegalArgumentException(String.format("Invalid %s: %s", type,
+                new String(buffer, offset, length, StandardCharsets.US_ASCII)));
+    }
+
+    private static boolean isValid(int month, int day, int hour, int minute, int second) {
+        return (month >= 1) && (month <= 12) && (day >= 1) && (day <= 31) &&
+                (hour <= 23) && (minute <= 59) && (second <= 59);
+    }
+
+    /**
+     * Parse decimal digits
+     * @return  value or -1 if a non-digit is encountered
+     */
+    private static int digits(byte[] buffer, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = (value * 10) + digit;
+        }
+        return value;
+    }
+
+    private static void writeDigits(int value, byte[] buffer, int offset, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+    }
+
+    private static void writeRowKey(long timestamp, byte[] buffer, int offset) {
+        long days = Math.floorDiv(timestamp, SEC_PER_DAY);
+        int secOfDay = (int) Math.floorMod(timestamp, SEC_PER_DAY);
+        writeDate(days, buffer, offset, offset + 4, offset + 6);
+        writeDigits((int) (secOfDay / SEC_PER_HR), buffer, offset + 8, 2);
+    }
+
+    private static void writeDateTime(long timestamp, byte[] buffer, int offset) {
+        long days = Math.floorDiv(timestamp, SEC_PER_DAY);
+        int secOfDay = (int) Math.floorMod(timestamp, SEC_PER_DAY);
+        writeDate(days, buffer, offset, offset + 5, offset + 8);
+        buffer[offset + 4] = '-';
+        buffer[offset + 7] = '-';
+        buffer[offset + 10] = ' ';
+        writeDigits(secOfDay / 3600, buffer, offset + 11, 2);
+        buffer[offset + 13] = ':';
+        writeDigits((secOfDay / 60) % 60, buffer, offset + 14, 2);
+        buffer[offset + 16] = ':';
+        writeDigits(secOfDay % 60, buffer, offset + 17, 2);
+    }
+
+    /**
+     * Convert a UTC date time to epoch seconds
+     */
+    public static long toEpochSecond(int year, int month, int day, int hour, int minute, int second) {
+        return (toEpochDay(year, month, day) * SEC_PER_DAY) + (hour * SEC_PER_HR) + (minute * 60L) + second;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date
+     */
+    static long toEpochDay(int year, int month, int day) {
+        long y = (month <= 2 ? year - 1 : year);
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - (era * 400);                                                 // [0, 399]
+        long doy = (((153 * (month + (month > 2 ? -3 : 9))) + 2) / 5) + day - 1;    // [0, 365]
+        long doe = (yoe * 365) + (yoe / 4) - (yoe / 100) + doy;                     // [0, 146096]
+        return (era * 146097) + doe - 719468;
+    }
+
+    /**
+     * Write the date of days since 1970-01-01
+     * @param epochDay      Days since 1970-01-01
+     * @param buffer        Buffer to write to
+     * @param yearOffset    Offset of 4 digit year
+     * @param monthOffset   Offset of 2 digit month
+     * @param dayOffset     Offset of 2 digit day
+     */
+    private static void writeDate(long epochDay, byte[] buffer, int yearOffset, int monthOffset, int dayOffset) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - (era * 146097);                                              // [0, 146096]
+        long yoe = (doe - (doe / 1460) + (doe / 36524) - (doe / 146096)) / 365;     // [0, 399]
+        long doy = doe - ((365 * yoe) + (yoe / 4) - (yoe / 100));                   // [0, 365]
+        long mp = ((5 * doy) + 2) / 153;                                            // [0, 11]
+        int day = (int) (doy - (((153 * mp) + 2) / 5) + 1);                         // [1, 31]
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);                              // [1, 12]
+        int year = (int) (yoe + (era * 400) + (month <= 2 ? 1 : 0));
+        writeDigits(year, buffer, yearOffset, 4);
+        writeDigits(month, buffer, monthOffset, 2);
+        writeDigits(day, buffer, dayOffset, 2);
+    }
+}
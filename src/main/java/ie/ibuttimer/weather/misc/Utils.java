@@ -42,7 +42,6 @@ import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static ie.ibuttimer.weather.Constants.CFG_TRANSFORM_LAG;
-import static ie.ibuttimer.weather.Constants.YYYYMMDDHH_FMT;
 
 /**
  * Miscellaneous utilities
@@ -271,9 +270,7 @@ public class Utils {
      * @return
      */
     public static String getRowName(long timestamp) {
-        return ROWNAME_PREFIX +
-                LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC).format(YYYYMMDDHH_FMT);
-
+        return RowKeyCodec.rowName(timestamp);
     }
 
 
@@ -283,7 +280,7 @@ public class Utils {
      * @return
      */
     public static LocalDateTime getRowDateTime(String rowName) {
-        return LocalDateTime.parse(rowName.substring(ROWNAME_PREFIX.length()), YYYYMMDDHH_FMT);
+        return LocalDateTime.ofEpochSecond(RowKeyCodec.decodeRowKey(rowName.getBytes()), 0, ZoneOffset.UTC);
     }
 
 
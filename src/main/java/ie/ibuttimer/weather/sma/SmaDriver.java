@@ -23,9 +23,7 @@
 package ie.ibuttimer.weather.sma;
 
 import ie.ibuttimer.weather.common.AbstractDriver;
-import ie.ibuttimer.weather.common.CKTSMapper;
-import ie.ibuttimer.weather.common.CompositeKey;
-import ie.ibuttimer.weather.common.TimeSeriesData;
+import ie.ibuttimer.weather.common.ModelMetrics;
 import ie.ibuttimer.weather.hbase.Hbase;
 import ie.ibuttimer.weather.misc.AppLogger;
 import ie.ibuttimer.weather.misc.IDriver;
@@ -72,44 +70,59 @@ public class SmaDriver extends AbstractDriver implements IDriver {
                 Job job = initJob(config, jobCfg, "SMA");
 
 
-                TableMapReduceUtil.initTableMapperJob(
-                        properties.getRight(), // input table
-                        initScan(jobCfg),     // Scan instance to control CF and attribute selection
-                        CKTSMapper.class,     // mapper class
-                        CompositeKey.class,   // mapper output key
-                        TimeSeriesData.class, // mapper output value
-                        job);
                 String reduceMode = jobCfg.getProperty(CFG_SMA_REDUCE_MODE, DFLT_SMA_REDUCE_MODE);
 
-                if (reduceMode.equalsIgnoreCase(SMA_FILE_REDUCE_MODE)) {
-                    job.setReducerClass(SmaFileReducer.class);    // reducer class
+                boolean mapOnly = isMapOnly(jobCfg, properties.getRight());
+                if (mapOnly && !reduceMode.equalsIgnoreCase(SMA_TABLE_REDUCE_MODE)) {
+                    logger.warn(CFG_MAP_ONLY + " only applies to " + SMA_TABLE_REDUCE_MODE + " reduce mode, ignoring");
+                    mapOnly = false;
+                }
 
-                    FileOutputFormat.setOutputPath(job, new Path(jobCfg.getProperty(CFG_OUT_PATH_ROOT)));
+                boolean sliced = false;
+                if (mapOnly) {
+                    createOutputTable(jobCfg, outTable, properties.getRight());
 
-                } else if (reduceMode.equalsIgnoreCase(SMA_TABLE_REDUCE_MODE)) {
+                    initMapOnlyJob(
+                            properties.getRight(),  // input table
+                            initScan(jobCfg),       // Scan instance to control CF and attribute selection
+                            SmaEngineMapper.class,  // mapper class
+                            outTable,               // output table
+                            job, jobCfg);
+                } else {
+                    initSeriesMapperJob(
+                            properties.getRight(), // input table
+                            initScan(jobCfg),     // Scan instance to control CF and attribute selection
+                            job, jobCfg);
 
-                    Hbase hbase = null;
-                    try {
-                        hbase = deleteTables(jobCfg, Collections.singletonList(outTable));
-                        hbase = createTable(jobCfg, outTable);
-                    } finally {
-                        if (hbase != null) {
-                            hbase.closeConnection();
-                        }
-                    }
+                    // window needs the preceding size - 1 readings
+                    sliced = initTimeSlicing(job, jobCfg, properties.getRight(), size - 1);
 
-                    TableMapReduceUtil.initTableReducerJob(
-                            outTable,                // output table
-                            SmaTableReducer.class,   // reducer class
-                            job);
+                    if (reduceMode.equalsIgnoreCase(SMA_FILE_REDUCE_MODE)) {
+                        job.setReducerClass(SmaFileReducer.class);    // reducer class
 
-                } else {
-                    resultCode = STATUS_CONFIG_ERROR;
+                        FileOutputFormat.setOutputPath(job, new Path(jobCfg.getProperty(CFG_OUT_PATH_ROOT)));
+
+                    } else if (reduceMode.equalsIgnoreCase(SMA_TABLE_REDUCE_MODE)) {
+
+                        createOutputTable(jobCfg, outTable, properties.getRight());
+
+                        TableMapReduceUtil.initTableReducerJob(
+                                outTable,                // output table
+                                SmaTableReducer.class,   // reducer class
+                                job);
+
+                    } else {
+                        resultCode = STATUS_CONFIG_ERROR;
+                    }
                 }
 
                 if (resultCode == STATUS_SUCCESS) {
                     resultCode = startJob(job, jobCfg);
 
+                    if ((resultCode == STATUS_SUCCESS) && (sliced || mapOnly) &&
+                            reduceMode.equalsIgnoreCase(SMA_TABLE_REDUCE_MODE)) {
+                        mergeSlicePartials(jobCfg, outTable, ModelMetrics::new);
+                    }
                     if (resultCode == STATUS_SUCCESS) {
                         saveResults(jobCfg, outTable, jobCfg.getProperty(CFG_SMA_PATH_ROOT, ""), logger);
                     }
@@ -122,4 +135,9 @@ public class SmaDriver extends AbstractDriver implements IDriver {
 
         return resultCode;
     }
+
+    private void createOutputTable(JobConfig jobCfg, String outTable, String inTable) throws IOException {
+        resetTables(jobCfg, Collections.singletonList(outTable));
+        createTable(jobCfg, outTable, inTable);
+    }
 }
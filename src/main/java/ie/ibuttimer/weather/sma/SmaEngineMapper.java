@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.sma;
+
+import ie.ibuttimer.weather.common.ISeriesEngine;
+import ie.ibuttimer.weather.common.ISeriesOutput;
+import ie.ibuttimer.weather.common.SeriesEngineMapper;
+import org.apache.hadoop.conf.Configuration;
+
+import static ie.ibuttimer.weather.Constants.CFG_MA_WINDOW_SIZE;
+import static ie.ibuttimer.weather.Constants.DFLT_MA_WINDOW_SIZE;
+
+/**
+ * Mapper to perform Simple Moving Average functionality in a map-only job
+ */
+public class SmaEngineMapper extends SeriesEngineMapper {
+
+    @Override
+    protected ISeriesEngine createEngine(Configuration conf, ISeriesOutput output) {
+        return new SmaReducerEngine(conf, SmaTableOutput.of(output));
+    }
+
+    @Override
+    protected int getWarmUpReadings(Configuration conf) {
+        // window needs the preceding size - 1 readings
+        return conf.getInt(CFG_MA_WINDOW_SIZE, DFLT_MA_WINDOW_SIZE) - 1;
+    }
+}
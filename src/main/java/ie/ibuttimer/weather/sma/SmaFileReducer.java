@@ -23,6 +23,7 @@
 package ie.ibuttimer.weather.sma;
 
 import ie.ibuttimer.weather.common.CompositeKey;
+import ie.ibuttimer.weather.common.SeriesReducer;
 import ie.ibuttimer.weather.common.TimeSeriesData;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -33,9 +34,10 @@ import java.io.IOException;
  * Reducer to perform Simple Moving Average functionality
  */
 public class SmaFileReducer extends Reducer<CompositeKey, TimeSeriesData, Text, Text>
-                            implements SmaReducerEngine.ISmaReduceOutput<CompositeKey, TimeSeriesData, Text, Text> {
+                            implements SmaReducerEngine.ISmaReduceOutput {
 
-    private SmaReducerEngine<CompositeKey, TimeSeriesData, Text, Text> engine;
+    private SeriesReducer seriesReducer;
+    private Context context;
 
     private final Text outKey = new Text();
     private final Text outValue = new Text();
@@ -44,19 +46,21 @@ public class SmaFileReducer extends Reducer<CompositeKey, TimeSeriesData, Text,
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
 
-        this.engine = new SmaReducerEngine<>(context.getConfiguration(),  this);
+        this.seriesReducer = SeriesReducer.of(context.getConfiguration(),
+                () -> new SmaReducerEngine(context.getConfiguration(), this));
+        this.context = context;
     }
 
     @Override
     protected void reduce(CompositeKey key, Iterable<TimeSeriesData> values, Context context) {
 
-        engine.reduce(key, values, context);
+        seriesReducer.reduce(key, values);
     }
 
     @Override
-    public void reduce(CompositeKey key, String dateTime, double value, double movingAvg, double error, Context context)
-                                            throws IOException, InterruptedException {
-        outKey.set(key.getMainKey());
+    public void reduce(String name, long timestamp, String dateTime, double value, double movingAvg, double error)
+            throws IOException, InterruptedException {
+        outKey.set(name);
         outValue.set(String.format("%s: actual: %5.2f  moving avg: %5.2f  error %5.2f  sq error %5.2f",
                 dateTime, value, movingAvg, error, Math.pow(error, 2)));
 
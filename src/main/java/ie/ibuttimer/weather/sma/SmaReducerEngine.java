@@ -22,12 +22,14 @@
 
 package ie.ibuttimer.weather.sma;
 
-import ie.ibuttimer.weather.common.CompositeKey;
-import ie.ibuttimer.weather.common.TimeSeriesData;
+import ie.ibuttimer.weather.common.ErrorTracker;
+import ie.ibuttimer.weather.common.ISeriesEngine;
+import ie.ibuttimer.weather.common.ModelMetrics;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.mapreduce.Reducer;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
@@ -39,22 +41,24 @@ import static ie.ibuttimer.weather.Constants.DFLT_DATETIME_FMT;
 /**
  * Engine to perform common reduce function for Simple Moving Average functionality
  */
-public class SmaReducerEngine<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
+public class SmaReducerEngine implements ISeriesEngine {
 
     private int windowSize;
-    private DateTimeFormatter dateTimeFmt;
-    private ISmaReduceOutput<KEYIN, VALUEIN, KEYOUT, VALUEOUT> output;
+    private DateTimeFormatter dateTimeFmt;  // null for default format
+    private ISmaReduceOutput output;
 
+    private String name;
+    private int slice;
+    private MovingAverage movingAverage;
+    private ErrorTracker errorTracker;
     private long count;
     private double sum;
 
-    public SmaReducerEngine(int windowSize, DateTimeFormatter dateTimeFmt,
-                            ISmaReduceOutput<KEYIN, VALUEIN, KEYOUT, VALUEOUT> output) {
+    public SmaReducerEngine(int windowSize, DateTimeFormatter dateTimeFmt, ISmaReduceOutput output) {
         init(windowSize, dateTimeFmt, output);
     }
 
-    private void init(int windowSize, DateTimeFormatter dateTimeFmt,
-                      ISmaReduceOutput<KEYIN, VALUEIN, KEYOUT, VALUEOUT> output) {
+    private void init(int windowSize, DateTimeFormatter dateTimeFmt, ISmaReduceOutput output) {
         this.windowSize = windowSize;
         this.dateTimeFmt = dateTimeFmt;
         this.output = output;
@@ -62,42 +66,69 @@ public class SmaReducerEngine<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
         this.sum = 0.0;
     }
 
-    public SmaReducerEngine(Configuration conf, ISmaReduceOutput<KEYIN, VALUEIN, KEYOUT, VALUEOUT> output) {
+    /**
+     * Constructor
+     * @param conf      Job configuration
+     * @param output    Output
+     */
+    public SmaReducerEngine(Configuration conf, ISmaReduceOutput output) {
+        String pattern = conf.get(CFG_DATETIME_FMT, DFLT_DATETIME_FMT);
         init(conf.getInt(CFG_MA_WINDOW_SIZE, DFLT_MA_WINDOW_SIZE),
-                new DateTimeFormatterBuilder().
-                    appendPattern(conf.get(CFG_DATETIME_FMT, DFLT_DATETIME_FMT)).toFormatter(),
+                // default format is handled by the row key codec
+                pattern.equals(DFLT_DATETIME_FMT) ? null :
+                        new DateTimeFormatterBuilder().appendPattern(pattern).toFormatter(),
                 output);
     }
 
-    public void reduce(CompositeKey key, Iterable<TimeSeriesData> values,
-                       Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context context) {
+    @Override
+    public void start(String name, int slice) {
+        this.name = name;
+        this.slice = slice;
+        this.movingAverage = new MovingAverage(windowSize);
+        this.errorTracker = new ErrorTracker();
+        this.count = 0;
+        this.sum = 0.0;
+    }
 
-        MovingAverage movingAverage = new MovingAverage(windowSize);
+    @Override
+    public void addReading(long timestamp, double value, boolean halo) {
 
-        values.forEach(v -> {
+        // update moving average
+        movingAverage.addNewNumber(value);
 
-            // CompositeKey(column name, timestamp), TimeSeriesData(timestamp, float value)
+        if (halo) {
+            return; // only required to fill the window
+        }
 
-            long timestamp = v.getTimestamp();
-            String dateTime = LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC).format(dateTimeFmt);
+        String dateTime;
+        if (dateTimeFmt == null) {
+            dateTime = RowKeyCodec.dateTime(timestamp);
+        } else {
+            dateTime = LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC).format(dateTimeFmt);
+        }
 
-            double value = v.getValue().doubleValue();
+        ++count;
+        sum += value;
 
-            ++count;
-            sum += value;
+        double movingAvg = movingAverage.getMovingAverage();
+        double error = value - movingAvg;
 
-            // update moving average
-            movingAverage.addNewNumber(value);
+        errorTracker.addError(value, error);
 
-            double movingAvg = movingAverage.getMovingAverage();
-            double error = value - movingAvg;
+        try {
+            output.reduce(name, timestamp, dateTime, value, movingAvg, error);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted writing output", e);
+        }
+    }
 
-            try {
-                output.reduce(key, dateTime, value, movingAvg, error, context);
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
+    @Override
+    public void finish() {
+        // only param is window size
+        output.writeStats(slice, name, ModelMetrics.of(errorTracker, 1, count, getParams()));
     }
 
     public long getCount() {
@@ -114,14 +145,19 @@ public class SmaReducerEngine<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
 
     /**
      * Callback interface
-     * @param <KEYIN>
-     * @param <VALUEIN>
-     * @param <KEYOUT>
-     * @param <VALUEOUT>
      */
-    public interface ISmaReduceOutput<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
-        void reduce(CompositeKey key, String dateTime, double value, double movingAvg, double error,
-                    Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context context)
+    public interface ISmaReduceOutput {
+        void reduce(String name, long timestamp, String dateTime, double value, double movingAvg, double error)
                 throws IOException, InterruptedException;
+
+        /**
+         * Write the model metrics for a series
+         * @param slice     Time slice of the series
+         * @param name      Column name
+         * @param metrics   Model metrics
+         */
+        default void writeStats(int slice, String name, ModelMetrics metrics) {
+            // no-op by default
+        }
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.sma;
+
+import ie.ibuttimer.weather.Constants;
+import ie.ibuttimer.weather.common.ISeriesOutput;
+import ie.ibuttimer.weather.common.ModelMetrics;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
+import org.apache.hadoop.hbase.client.Put;
+
+import static ie.ibuttimer.weather.Constants.FAMILY_BYTES;
+
+/**
+ * Simple Moving Average output to a table
+ */
+public class SmaTableOutput implements SmaReducerEngine.ISmaReduceOutput {
+
+    private final ISeriesOutput output;
+
+    private final StorageEncoding encoding;
+
+    private final RowKeyCodec rowKeys;
+
+    private SmaTableOutput(ISeriesOutput output) {
+        this.output = output;
+        this.encoding = output.getEncoding();
+        this.rowKeys = new RowKeyCodec(output.getSaltBuckets());
+    }
+
+    public static SmaTableOutput of(ISeriesOutput output) {
+        return new SmaTableOutput(output);
+    }
+
+    @Override
+    public void reduce(String name, long timestamp, String dateTime, double value, double movingAvg, double error) {
+
+        Put put = new Put(rowKeys.encodeRowKey(timestamp))
+            .addColumn(FAMILY_BYTES, Constants.ACTUAL, encoding.encode(value))
+            .addColumn(FAMILY_BYTES, Constants.MOVING_AVG, encoding.encode(movingAvg))
+            .addColumn(FAMILY_BYTES, Constants.ERROR, encoding.encode(error))
+            .addColumn(FAMILY_BYTES, Constants.SQ_ERROR, encoding.encode(Math.pow(error, 2)));
+
+        output.write(put);
+    }
+
+    @Override
+    public void writeStats(int slice, String name, ModelMetrics metrics) {
+        output.writeStats(slice, name, metrics);
+    }
+}
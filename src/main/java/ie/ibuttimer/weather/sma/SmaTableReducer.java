@@ -22,63 +22,32 @@
 
 package ie.ibuttimer.weather.sma;
 
-import ie.ibuttimer.weather.Constants;
 import ie.ibuttimer.weather.common.AbstractTableReducer;
 import ie.ibuttimer.weather.common.CompositeKey;
-import ie.ibuttimer.weather.common.ErrorTracker;
 import ie.ibuttimer.weather.common.TimeSeriesData;
-import ie.ibuttimer.weather.misc.Utils;
-import org.apache.hadoop.hbase.client.Mutation;
-import org.apache.hadoop.hbase.client.Put;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.Text;
 
 import java.io.IOException;
 
-import static ie.ibuttimer.weather.Constants.FAMILY_BYTES;
-import static ie.ibuttimer.weather.hbase.Hbase.storeValueAsString;
-
 /**
  * Reducer to perform Simple Moving Average functionality
  */
-public class SmaTableReducer extends AbstractTableReducer<CompositeKey, TimeSeriesData, Text>
-                            implements SmaReducerEngine.ISmaReduceOutput<CompositeKey, TimeSeriesData, Text, Mutation> {
+public class SmaTableReducer extends AbstractTableReducer<CompositeKey, TimeSeriesData, Text> {
 
     // public abstract class TableReducer<KEYIN, VALUEIN, KEYOUT> extends Reducer<KEYIN, VALUEIN, KEYOUT, Mutation>
 
-    private SmaReducerEngine<CompositeKey, TimeSeriesData, Text, Mutation> engine;
-
-    private ErrorTracker errorTracker;
-
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
 
-        this.engine = new SmaReducerEngine<>(context.getConfiguration(),  this);
-        this.errorTracker = new ErrorTracker();
+        SmaTableOutput tableOutput = SmaTableOutput.of(output);
+        setEngineFactory(context.getConfiguration(),
+                () -> new SmaReducerEngine(context.getConfiguration(), tableOutput));
     }
 
     @Override
     protected void reduce(CompositeKey key, Iterable<TimeSeriesData> values, Context context) {
 
-        engine.reduce(key, values, context);
-
-        // only param is window size
-        addModelMetrics(context, key.getMainKey(), errorTracker,1, (int)engine.getCount(), engine.getParams());
-    }
-
-    @Override
-    public void reduce(CompositeKey key, String dateTime, double value, double movingAvg, double error, Context context)
-                                                                    throws IOException, InterruptedException {
-
-        String row = Utils.getRowName(key.getSubKey());
-        Put put = new Put(Bytes.toBytes(row))
-            .addColumn(FAMILY_BYTES, Constants.ACTUAL, storeValueAsString(value))
-            .addColumn(FAMILY_BYTES, Constants.MOVING_AVG, storeValueAsString(movingAvg))
-            .addColumn(FAMILY_BYTES, Constants.ERROR, storeValueAsString(error))
-            .addColumn(FAMILY_BYTES, Constants.SQ_ERROR, storeValueAsString(Math.pow(error, 2)));
-
-        errorTracker.addError(value, error);
-
-        write(context, put);
+        reduceSeries(key, values);
     }
 }
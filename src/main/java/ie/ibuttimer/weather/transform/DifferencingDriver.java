@@ -24,9 +24,7 @@ package ie.ibuttimer.weather.transform;
 
 import com.google.common.collect.Lists;
 import ie.ibuttimer.weather.common.AbstractDriver;
-import ie.ibuttimer.weather.common.CKTSMapper;
-import ie.ibuttimer.weather.common.CompositeKey;
-import ie.ibuttimer.weather.common.TimeSeriesData;
+import ie.ibuttimer.weather.analysis.StatsAccumulator;
 import ie.ibuttimer.weather.hbase.Hbase;
 import ie.ibuttimer.weather.misc.AppLogger;
 import ie.ibuttimer.weather.misc.IDriver;
@@ -44,6 +42,7 @@ import java.util.Map;
 
 import static ie.ibuttimer.weather.Constants.*;
 import static ie.ibuttimer.weather.transform.DifferencingTableReducer.getSeasonalDiff;
+import static ie.ibuttimer.weather.transform.DifferencingTableReducer.getWarmUpReadings;
 
 public class DifferencingDriver extends AbstractDriver implements IDriver {
 
@@ -70,33 +69,40 @@ public class DifferencingDriver extends AbstractDriver implements IDriver {
 
             // create output table if necessary
             String outputTable = map.get(CFG_DIFFERENCING_OUT_TABLE);
-            Hbase hbase = null;
-            try {
-                hbase = deleteTables(jobCfg, Collections.singletonList(outputTable));
-                hbase = createTable(jobCfg, outputTable);
-            } finally {
-                if (hbase != null) {
-                    hbase.closeConnection();
-                }
-            }
+            resetTables(jobCfg, Collections.singletonList(outputTable));
+            createTable(jobCfg, outputTable, map.get(CFG_DIFFERENCING_IN_TABLE));
 
             Job job = initJob(config, jobCfg, "Differencing");
 
             String inputTable = map.get(CFG_DIFFERENCING_IN_TABLE);
-            TableMapReduceUtil.initTableMapperJob(
-                    inputTable,         // input table
-                    initScan(jobCfg),     // Scan instance to control CF and attribute selection
-                    CKTSMapper.class,     // mapper class
-                    CompositeKey.class,   // mapper output key
-                    TimeSeriesData.class, // mapper output value
-                    job);
-
-            TableMapReduceUtil.initTableReducerJob(
-                    outputTable,   // output table
-                    DifferencingTableReducer.class,   // reducer class
-                    job);
+            boolean sliced = false;
+            boolean mapOnly = isMapOnly(jobCfg, inputTable);
+            if (mapOnly) {
+                initMapOnlyJob(
+                        inputTable,         // input table
+                        initScan(jobCfg),     // Scan instance to control CF and attribute selection
+                        DifferencingEngineMapper.class,   // mapper class
+                        outputTable,   // output table
+                        job, jobCfg);
+            } else {
+                initSeriesMapperJob(
+                        inputTable,         // input table
+                        initScan(jobCfg),     // Scan instance to control CF and attribute selection
+                        job, jobCfg);
+
+                sliced = initTimeSlicing(job, jobCfg, inputTable,
+                        getWarmUpReadings(jobCfg.getProperty(CFG_DIFFERENCING, "")));
+
+                TableMapReduceUtil.initTableReducerJob(
+                        outputTable,   // output table
+                        DifferencingTableReducer.class,   // reducer class
+                        job);
+            }
 
             resultCode = startJob(job, jobCfg);
+            if ((resultCode == STATUS_SUCCESS) && (sliced || mapOnly)) {
+                mergeSlicePartials(jobCfg, outputTable, StatsAccumulator::new);
+            }
             if (resultCode == STATUS_SUCCESS) {
                 saveResults(jobCfg, outputTable, logger);
             }
@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.transform;
+
+import com.google.common.collect.Lists;
+import ie.ibuttimer.weather.analysis.StatsAccumulator;
+import ie.ibuttimer.weather.common.ISeriesEngine;
+import ie.ibuttimer.weather.common.ISeriesOutput;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.misc.AppLogger;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
+import org.apache.commons.lang3.tuple.Triple;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static ie.ibuttimer.weather.Constants.*;
+import static ie.ibuttimer.weather.transform.DifferencingTableReducer.getDifferenceColumnName;
+import static ie.ibuttimer.weather.transform.DifferencingTableReducer.getSeasonalDiff;
+
+/**
+ * Engine to perform differencing of a series
+ */
+public class DifferencingEngine implements ISeriesEngine {
+
+    private static final AppLogger logger = AppLogger.of(Logger.getLogger("DifferencingEngine"));
+
+    private final int differencing;
+    private final int seasonal;
+    private final String diffTypeName;
+    private final ISeriesOutput output;
+    private final StorageEncoding encoding;
+
+    private final RowKeyCodec rowKeys;
+
+    private String name;
+    private int slice;
+    private int stepCount;
+    private List<Cache> cacheList;
+    private StatsAccumulator[] statsAccumulators;
+
+    public DifferencingEngine(String diffSetting, ISeriesOutput output) {
+        Triple<Integer, Integer, String> setting = getSeasonalDiff(diffSetting);
+        this.seasonal = setting.getLeft();
+        this.differencing = setting.getMiddle();
+        this.diffTypeName = setting.getRight();
+        this.output = output;
+        this.encoding = output.getEncoding();
+        this.rowKeys = new RowKeyCodec(output.getSaltBuckets());
+    }
+
+    @Override
+    public void start(String name, int slice) {
+        this.name = name;
+        this.slice = slice;
+        this.stepCount = 0;
+
+        cacheList = Lists.newArrayList();
+        if (differencing <= 0 && seasonal <= 0) {
+            statsAccumulators = new StatsAccumulator[] { new StatsAccumulator() };    // stats for pass-through
+            cacheList = Lists.newArrayList(new Cache(0, 0, 0));    // 1st is just pass-through
+        } else {
+            statsAccumulators = new StatsAccumulator[differencing + 1]; // lags + pass-through
+            for (int i = 0; i < statsAccumulators.length; ++i) {
+                int depth = (i == 0 ? 0 : seasonal);
+                cacheList.add(new Cache(i * seasonal, depth, i));    // 1st is just pass-through
+                statsAccumulators[i] = new StatsAccumulator();
+            }
+        }
+
+        for (int i = 0; i < cacheList.size(); i++) {
+            String tag = getDifferenceColumnName(name, diffTypeName, i);
+            cacheList.get(i).tag = tag;
+
+            statsAccumulators[i].setTag(tag);
+        }
+    }
+
+    @Override
+    public void addReading(long timestamp, double value, boolean halo) {
+
+        // halo is only required to fill the caches
+        Put put = new Put(rowKeys.encodeRowKey(timestamp));
+
+        double diffVal = value;
+        for (Cache c : cacheList) {
+            Optional<Double> difference = c.addValue(stepCount, diffVal);
+            if (difference.isPresent()) {
+                double d = difference.get();
+                diffVal = d;
+
+                if (!halo) {
+                    put.addColumn(FAMILY_BYTES, c.tag.getBytes(), encoding.encode(d));
+
+                    statsAccumulators[c.index].addValue(d, timestamp);
+                }
+            }
+        }
+
+        if (!halo) {
+            output.write(put);
+        }
+
+        ++stepCount;
+    }
+
+    @Override
+    public void finish() {
+        Arrays.asList(statsAccumulators).forEach(a -> {
+            logger.logger().info(
+                    String.format("%s: %s - count=%d  min=%f  max=%f  mean=%f  variance=%f  stdDev=%f  minTs=%s  maxTs=%s",
+                            name, a.getTag(), a.getCount(), a.getMin(), a.getMax(),
+                            a.getMean(), a.getVariance(), a.getSetDev(),
+                            a.getMinTimestamp(DATETIME_FMT), a.getMaxTimestamp(DATETIME_FMT)));
+
+            // mark stats rows with STATS_ROW_MARK
+            output.writeStats(slice, a.getTag(), a);
+        });
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(this.hashCode()) +
+                "{" +
+                "differencing=" + differencing +
+                ", seasonal=" + seasonal +
+                '}';
+    }
+
+    private static class Cache {
+        int trigger;
+        double[] prev;
+        int saveIdx;
+        int readIdx;
+        boolean open;
+        String tag;
+        int index;
+
+        public Cache(int trigger, int depth, int index) {
+            this.trigger = trigger;
+            this.prev = new double[depth];
+            this.saveIdx = -1;
+            this.readIdx = 0;
+            this.open = false;
+            this.tag = "";
+            this.index = index;
+        }
+
+        int next_idx() {
+            if (open) {
+                readIdx = (readIdx + 1) % prev.length;
+            }
+            saveIdx = (saveIdx + 1) % prev.length;
+            return saveIdx;
+        }
+
+        Optional<Double> addValue(int step, double value) {
+            Optional<Double> difference;
+            if (prev.length == 0) {
+                // pass-through
+                difference = Optional.of(value);
+            } else {
+                difference = Optional.empty();
+                if (step == trigger) {
+                    // triggered so just save value
+                    prev[next_idx()] = value;
+                } else if (step > trigger) {
+                    if (!open) {
+                        // open if cache full
+                        open = (saveIdx == prev.length - 1);
+                    }
+                    if (open) {
+                        difference = Optional.of(value - prev[readIdx]);
+                    }
+                    prev[next_idx()] = value;
+                }
+            }
+            return difference;
+        }
+
+        @Override
+        public String toString() {
+            return "Cache{" +
+                    "trigger=" + trigger +
+                    ", open=" + open +
+                    ", index=" + index +
+                    ", tag='" + tag + '\'' +
+                    '}';
+        }
+    }
+}
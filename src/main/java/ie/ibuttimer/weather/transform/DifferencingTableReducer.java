@@ -22,26 +22,17 @@
 
 package ie.ibuttimer.weather.transform;
 
-import com.google.common.collect.Lists;
-import ie.ibuttimer.weather.analysis.StatsAccumulator;
 import ie.ibuttimer.weather.common.AbstractTableReducer;
 import ie.ibuttimer.weather.common.CompositeKey;
 import ie.ibuttimer.weather.common.TimeSeriesData;
-import ie.ibuttimer.weather.misc.AppLogger;
-import ie.ibuttimer.weather.misc.Utils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Triple;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.client.Put;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.Text;
-import org.apache.log4j.Logger;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.Arrays;
 
 import static ie.ibuttimer.weather.Constants.*;
-import static ie.ibuttimer.weather.hbase.Hbase.storeValueAsString;
 import static ie.ibuttimer.weather.misc.Utils.buildTag;
 
 /**
@@ -53,36 +44,12 @@ public class DifferencingTableReducer extends AbstractTableReducer<CompositeKey,
 
     // public abstract class TableReducer<KEYIN, VALUEIN, KEYOUT> extends Reducer<KEYIN, VALUEIN, KEYOUT, Mutation>
 
-    private static final AppLogger logger = AppLogger.of(Logger.getLogger("DifferencingTableReducer"));
-
-    private int differencing;
-    private int seasonal;
-    private List<Cache> cacheList;
-    private StatsAccumulator[] statsAccumulators;
-    private String diffTypeName;
-
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
 
-        Configuration conf = context.getConfiguration();
-
-        Triple<Integer, Integer, String> setting = getSeasonalDiff(conf.get(CFG_DIFFERENCING, ""));
-        this.seasonal = setting.getLeft();
-        this.differencing = setting.getMiddle();
-        this.diffTypeName = setting.getRight();
-
-        cacheList = Lists.newArrayList();
-        if (differencing <= 0 && seasonal <= 0) {
-            statsAccumulators = new StatsAccumulator[1];    // stats for pass-through
-            cacheList = Lists.newArrayList(new Cache(0, 0, 0));    // 1st is just pass-through
-        } else {
-            statsAccumulators = new StatsAccumulator[differencing + 1]; // lags + pass-through
-            for (int i = 0; i < statsAccumulators.length; ++i) {
-                int depth = (i == 0 ? 0 : seasonal);
-                cacheList.add(new Cache(i * seasonal, depth, i));    // 1st is just pass-through
-                statsAccumulators[i] = new StatsAccumulator();
-            }
-        }
+        String diffSetting = context.getConfiguration().get(CFG_DIFFERENCING, "");
+        setEngineFactory(context.getConfiguration(), () -> new DifferencingEngine(diffSetting, output));
     }
 
     public static Triple<Integer, Integer, String> getSeasonalDiff(String diffSetting) {
@@ -113,80 +80,33 @@ public class DifferencingTableReducer extends AbstractTableReducer<CompositeKey,
         return Triple.of(seasonal, differencing, diffTypeName);
     }
 
-    @Override
-    protected void reduce(CompositeKey key, Iterable<TimeSeriesData> values, Context context) throws IOException, InterruptedException {
-
-        final int[] stepCount = {0};
-
-        String name = key.getMainKey();
-
-        for (int i = 0; i < cacheList.size(); i++) {
-            String tag = getDifferenceColumnName(key, diffTypeName, i);
-            cacheList.get(i).tag = tag;
-
-            statsAccumulators[i].setTag(tag);
+    /**
+     * Get the number of readings required before all differencing orders are output
+     * @param diffSetting   Differencing setting
+     * @return
+     */
+    public static int getWarmUpReadings(String diffSetting) {
+        Triple<Integer, Integer, String> setting = getSeasonalDiff(diffSetting);
+        int seasonal = setting.getLeft();
+        int differencing = setting.getMiddle();
+        int readings = 0;
+        if (differencing > 0 || seasonal > 0) {
+            // cache for order i starts saving at reading i * seasonal and outputs once full
+            readings = (differencing + 1) * seasonal;
         }
+        return readings;
+    }
 
-        values.forEach(v -> {
-
-            // CompositeKey(column name, timestamp), TimeSeriesData(timestamp, float value)
-
-            double value = v.getValue().doubleValue();
-            long timestamp = v.getTimestamp();
-
-            String row = Utils.getRowName(key.getSubKey());
-            Put put = new Put(Bytes.toBytes(row));
-
-            final double[] diffVal = new double[] {value};
-            cacheList.forEach(c -> {
-                c.addValue(stepCount[0], diffVal[0])
-                    .ifPresent(d -> {
-                        put.addColumn(FAMILY_BYTES, c.tag.getBytes(), storeValueAsString(d));
-                        diffVal[0] = d;
-
-                        statsAccumulators[c.index].addValue(d, timestamp);
-                    });
-            });
-
-            write(context, put);
-
-            ++stepCount[0];
-        });
-
-        Arrays.asList(statsAccumulators).forEach(a -> {
-            logger.logger().info(
-                    String.format("%s: %s - count=%d  min=%f  max=%f  mean=%f  variance=%f  stdDev=%f  minTs=%s  maxTs=%s",
-                            name, a.getTag(), a.getCount(), a.getMin(), a.getMax(),
-                            a.getMean(), a.getVariance(), a.getSetDev(),
-                            a.getMinTimestamp(DATETIME_FMT), a.getMaxTimestamp(DATETIME_FMT)));
-
-            // mark stats rows with STATS_ROW_MARK
-//            Put put = new Put(Bytes.toBytes(STATS_ROW_MARK + BASENAME))
-//                    .addColumn(FAMILY_BYTES, BASENAME.getBytes(), storeValueAsString(name));
-//            write(context, put);
-
-            Put put = new Put(Bytes.toBytes(STATS_ROW_MARK + a.getTag()))
-                    .addColumn(FAMILY_BYTES, COUNT.getBytes(), storeValueAsString(a.getCount()))
-                    .addColumn(FAMILY_BYTES, MIN.getBytes(), storeValueAsString(a.getMin()))
-                    .addColumn(FAMILY_BYTES, MAX.getBytes(), storeValueAsString(a.getMax()))
-                    .addColumn(FAMILY_BYTES, MEAN.getBytes(), storeValueAsString(a.getMean()))
-                    .addColumn(FAMILY_BYTES, VARIANCE.getBytes(), storeValueAsString(a.getVariance()))
-                    .addColumn(FAMILY_BYTES, STD_DEV.getBytes(), storeValueAsString(a.getSetDev()))
-                    .addColumn(FAMILY_BYTES, MIN_TS.getBytes(), storeValueAsString(a.getMinTimestamp(DATETIME_FMT)))
-                    .addColumn(FAMILY_BYTES, MAX_TS.getBytes(), storeValueAsString(a.getMaxTimestamp(DATETIME_FMT)));
-            write(context, put);
-        });
+    @Override
+    protected void reduce(CompositeKey key, Iterable<TimeSeriesData> values, Context context) throws IOException, InterruptedException {
 
+        reduceSeries(key, values);
     }
 
-    public static String getDifferenceRowName(CompositeKey key, String diffType, int id) {
+    public static String getDifferenceRowName(String key, String diffType, int id) {
         return STATS_ROW_MARK + getDifferenceColumnName(key, diffType, id);
     }
 
-    public static String getDifferenceColumnName(CompositeKey key, String diffType, int id) {
-        return getDifferenceColumnName(key.getMainKey(), diffType, id);
-    }
-
     public static String getDifferenceColumnName(String key, String diffType, int id) {
         return buildTag(Arrays.asList(key, diffType, Integer.toString(id)));
     }
@@ -195,69 +115,7 @@ public class DifferencingTableReducer extends AbstractTableReducer<CompositeKey,
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(this.hashCode()) +
                 "{" +
-                "differencing=" + differencing +
+                "series=" + seriesReducer +
                 '}';
     }
-
-    private static class Cache {
-        int trigger;
-        double[] prev;
-        int saveIdx;
-        int readIdx;
-        boolean open;
-        String tag;
-        int index;
-
-        public Cache(int trigger, int depth, int index) {
-            this.trigger = trigger;
-            this.prev = new double[depth];
-            this.saveIdx = -1;
-            this.readIdx = 0;
-            this.open = false;
-            this.tag = "";
-            this.index = index;
-        }
-
-        int next_idx() {
-            if (open) {
-                readIdx = (readIdx + 1) % prev.length;
-            }
-            saveIdx = (saveIdx + 1) % prev.length;
-            return saveIdx;
-        }
-
-        Optional<Double> addValue(int step, double value) {
-            Optional<Double> difference;
-            if (prev.length == 0) {
-                // pass-through
-                difference = Optional.of(value);
-            } else {
-                difference = Optional.empty();
-                if (step == trigger) {
-                    // triggered so just save value
-                    prev[next_idx()] = value;
-                } else if (step > trigger) {
-                    if (!open) {
-                        // open if cache full
-                        open = (saveIdx == prev.length - 1);
-                    }
-                    if (open) {
-                        difference = Optional.of(value - prev[readIdx]);
-                    }
-                    prev[next_idx()] = value;
-                }
-            }
-            return difference;
-        }
-
-        @Override
-        public String toString() {
-            return "Cache{" +
-                    "trigger=" + trigger +
-                    ", open=" + open +
-                    ", index=" + index +
-                    ", tag='" + tag + '\'' +
-                    '}';
-        }
-    }
 }
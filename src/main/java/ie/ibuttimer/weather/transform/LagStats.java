@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.transform;
+
+import ie.ibuttimer.weather.common.IPartialStats;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.misc.AppLogger;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static ie.ibuttimer.weather.Constants.*;
+
+/**
+ * Sums required to calculate the auto covariance and auto correlation of a lagged series
+ */
+public class LagStats implements IPartialStats<LagStats> {
+
+    private static final AppLogger logger = AppLogger.of(Logger.getLogger("LagStats"));
+
+    double diffProd;
+    double meanDist;
+    long count;
+    double mean;
+    boolean zeroTransform;
+
+    public LagStats() {
+        this(0.0, false);
+    }
+
+    public LagStats(double mean, boolean zeroTransform) {
+        this.diffProd = 0;
+        this.meanDist = 0;
+        this.count = 0;
+        this.mean = mean;
+        this.zeroTransform = zeroTransform;
+    }
+
+    @Override
+    public void merge(LagStats other) {
+        diffProd += other.diffProd;
+        meanDist += other.meanDist;
+        count += other.count;
+        // mean & transform setting are the same for all parts
+        mean = other.mean;
+        zeroTransform = other.zeroTransform;
+    }
+
+    @Override
+    public Put toPut(String tag, StorageEncoding encoding) {
+        // calc autocovariance
+        // E(X Xt) - mean2
+        double autocovariance = Double.NaN;
+        String autocovarianceDbg = "";
+        if (zeroTransform) {
+            autocovariance = (diffProd / count) - Math.pow(mean, 2);
+            autocovarianceDbg = String.format("autocovariance %.3f", autocovariance);
+        }
+        // calc autocorrelation
+        // E(X Xt) - mean2
+        double autocorrelation = diffProd / meanDist;
+
+        logger.logger().info(String.format("XXX %s XXX  autocorrelation %.3f  %s",
+                tag, autocorrelation, autocovarianceDbg));
+
+        Put put = new Put(Bytes.toBytes(STATS_ROW_MARK + tag))
+                .addColumn(FAMILY_BYTES, AUTOCORRELATION.getBytes(), encoding.encode(autocorrelation));
+        if (zeroTransform) {
+            put.addColumn(FAMILY_BYTES, AUTOCOVARIANCE.getBytes(), encoding.encode(autocovariance));
+        }
+        return put;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(diffProd);
+        out.writeDouble(meanDist);
+        out.writeLong(count);
+        out.writeDouble(mean);
+        out.writeBoolean(zeroTransform);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        diffProd = in.readDouble();
+        meanDist = in.readDouble();
+        count = in.readLong();
+        mean = in.readDouble();
+        zeroTransform = in.readBoolean();
+    }
+}
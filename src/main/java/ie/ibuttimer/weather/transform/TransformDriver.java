@@ -24,9 +24,6 @@ package ie.ibuttimer.weather.transform;
 
 import com.google.common.collect.Lists;
 import ie.ibuttimer.weather.common.AbstractDriver;
-import ie.ibuttimer.weather.common.CKTSMapper;
-import ie.ibuttimer.weather.common.CompositeKey;
-import ie.ibuttimer.weather.common.TimeSeriesData;
 import ie.ibuttimer.weather.hbase.Hbase;
 import ie.ibuttimer.weather.misc.AppLogger;
 import ie.ibuttimer.weather.misc.IDriver;
@@ -71,32 +68,28 @@ public class TransformDriver extends AbstractDriver implements IDriver {
 
             // create output table if necessary
             String transformTable = map.get(CFG_TRANSFORM_OUT_TABLE);
-            Hbase hbase = null;
-            try {
-                hbase = createTable(jobCfg, transformTable);
-
-                if (addStats) {
-                    // stats may already be added if job triggered as part of chain
-                    String statsTable = map.get(CFG_TRANSFORM_STATS_TABLE);
-                    addStatsToConfig(hbase, jobCfg, statsTable, config, Arrays.asList(MEAN, VARIANCE));
-                }
-
-            } finally {
-                if (hbase != null) {
-                    hbase.closeConnection();
-                }
+            Hbase hbase = createTable(jobCfg, transformTable, map.get(CFG_TRANSFORM_IN_TABLE));
+
+            if (addStats) {
+                // stats may already be added if job triggered as part of chain
+                String statsTable = map.get(CFG_TRANSFORM_STATS_TABLE);
+                addStatsToConfig(hbase, jobCfg, statsTable, config, Arrays.asList(MEAN, VARIANCE));
             }
 
             Job job = initJob(config, jobCfg, "Transform");
 
             String inputTable = map.get(CFG_TRANSFORM_IN_TABLE);
-            TableMapReduceUtil.initTableMapperJob(
+            initSeriesMapperJob(
                     inputTable,         // input table
                     initScan(jobCfg),     // Scan instance to control CF and attribute selection
-                    CKTSMapper.class,     // mapper class
-                    CompositeKey.class,   // mapper output key
-                    TimeSeriesData.class, // mapper output value
-                    job);
+                    job, jobCfg);
+
+            // lag queues need the preceding max lag readings
+            long maxLag = TransformTableReducer.getLags(jobCfg.getProperty(CFG_TRANSFORM_LAG, "")).stream()
+                    .mapToLong(Long::longValue)
+                    .max().orElse(0);
+            boolean sliced = initTimeSlicing(job, jobCfg, inputTable,
+                    (int) (maxLag * 60 * 60 / jobCfg.getProperty(CFG_READING_INTERVAL, DFLT_READING_INTERVAL)));
 
             TableMapReduceUtil.initTableReducerJob(
                     transformTable,                // output table
@@ -105,6 +98,9 @@ public class TransformDriver extends AbstractDriver implements IDriver {
 
             resultCode = startJob(job, jobCfg);
 
+            if ((resultCode == STATUS_SUCCESS) && sliced) {
+                mergeSlicePartials(jobCfg, transformTable, LagStats::new);
+            }
             if (resultCode == STATUS_SUCCESS) {
                 saveResults(jobCfg, transformTable, logger);
             }
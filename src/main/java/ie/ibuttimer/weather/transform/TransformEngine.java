@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2020 Ian Buttimer
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package ie.ibuttimer.weather.transform;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Lists;
+import ie.ibuttimer.weather.common.ISeriesEngine;
+import ie.ibuttimer.weather.common.ISeriesOutput;
+import ie.ibuttimer.weather.hbase.StorageEncoding;
+import ie.ibuttimer.weather.misc.RowKeyCodec;
+import org.apache.hadoop.hbase.client.Put;
+
+import java.util.List;
+import java.util.Optional;
+
+import static ie.ibuttimer.weather.Constants.*;
+import static ie.ibuttimer.weather.transform.TransformTableReducer.getTransformColumnName;
+
+/**
+ * Engine to produce the lagged outputs of a series
+ */
+public class TransformEngine implements ISeriesEngine {
+
+    private static final int SEC_PER_HR = 60 * 60;
+
+    private final List<Long> lags;
+    private final boolean zeroTransform;
+    private final HashBasedTable<String, String, Double> stats;
+    private final ISeriesOutput output;
+    private final StorageEncoding encoding;
+
+    private final RowKeyCodec rowKeys;
+
+    private int slice;
+    private double mean;
+    private List<Accumulator> accumulators;
+
+    /**
+     * Constructor
+     * @param lags          Lags to generate in hours, including the unlagged series
+     * @param zeroTransform Zero transform the series
+     * @param stats         Series stats, required for zero transform
+     * @param output        Output
+     */
+    public TransformEngine(List<Long> lags, boolean zeroTransform, HashBasedTable<String, String, Double> stats,
+                           ISeriesOutput output) {
+        this.lags = lags;
+        this.zeroTransform = zeroTransform;
+        this.stats = stats;
+        this.output = output;
+        this.encoding = output.getEncoding();
+        this.rowKeys = new RowKeyCodec(output.getSaltBuckets());
+    }
+
+    private Accumulator genLagged(long hrLag, double mean) {
+        long lagLen = hrLag * SEC_PER_HR;  // hours -> sec
+        return new Accumulator(lagLen, mean, zeroTransform);
+    }
+
+    @Override
+    public void start(String name, int slice) {
+        this.slice = slice;
+
+        mean = 0.0;
+        if (zeroTransform) {
+            mean = stats.get(name, MEAN);
+        }
+
+        accumulators = Lists.newArrayList();
+        lags.forEach(l -> {
+            Accumulator a = genLagged(l, mean);
+            a.tag = getTransformColumnName(name, (int)a.getId());
+            accumulators.add(a);
+        });
+    }
+
+    @Override
+    public void addReading(long timestamp, double value, boolean halo) {
+
+        double useValue = value;
+        if (zeroTransform) {
+            useValue -= mean;
+        }
+
+        // halo is only required to fill the lag queues
+        Put put = new Put(rowKeys.encodeRowKey(timestamp));
+
+        for (Accumulator a : accumulators) {
+            if (!halo) {
+                a.stats.meanDist += Math.pow(useValue, 2);   // sq(y - y_bar)
+            }
+            Optional<Double> lv = a.lagged.addValue(timestamp, value);
+            if (lv.isPresent() && !halo) {
+                // zero transformed lag value
+                double useLagValue = lv.get();
+                if (zeroTransform) {
+                    useLagValue -= mean;
+                }
+                put.addColumn(FAMILY_BYTES, a.tag.getBytes(), encoding.encode(useLagValue));
+
+                a.stats.diffProd += (useValue * useLagValue);
+            }
+            if (!halo) {
+                ++a.stats.count;
+            }
+        }
+
+        if (!halo) {
+            output.write(put);
+        }
+    }
+
+    @Override
+    public void finish() {
+        accumulators.forEach(a -> output.writeStats(slice, a.tag, a.stats));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(this.hashCode()) +
+                "{" +
+                "lags=" + lags +
+                ", zeroTransform=" + zeroTransform +
+                '}';
+    }
+
+    private static class Accumulator {
+        long lag;
+        Lagged<Double> lagged;
+        LagStats stats;
+        String tag;
+
+        public Accumulator(long lag, double mean, boolean zeroTransform) {
+            this.lag = lag;
+            this.lagged = new Lagged<>(lag);
+            this.stats = new LagStats(mean, zeroTransform);
+            this.tag = "";
+        }
+
+        long getId() {
+            return lag/SEC_PER_HR;
+        }
+    }
+}